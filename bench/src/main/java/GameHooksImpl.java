@@ -0,0 +1,157 @@
+import java.awt.Graphics2D;
+
+/** Default-package side of {@link bench.GameHooks}, with access to the game internals */
+public class GameHooksImpl implements bench.GameHooks {
+    private Stickman_Badminton game;
+    private Stickman_Badminton.GameState mode;
+    private Birdie birdie;
+    private Player runner;
+    private Player swinger;
+    private Birdie target;
+    private Player swingerStart;
+    private Birdie targetStart;
+    private double dt;
+    private ShuttlePool drill;
+    private java.util.Random drillRandom;
+    private final int[] drillFound = new int[256];
+
+    @Override
+    public void setUp(String mode, boolean headless) {
+        game = new Stickman_Badminton(headless);
+        game.setMuted(true);
+        game.init();
+        game.awaitAssets();
+        game.setFixedTimestep(120);
+        game.setAutoPlay(true);
+        this.mode = Stickman_Badminton.GameState.valueOf(mode);
+        game.startMatch(this.mode);
+        game.initialised = true;
+        dt = game.getTickDt();
+
+        birdie = new Birdie(game, "img/ball.png");
+        birdie.serve(200, 400, +1);
+
+        runner = new Player(game, "img/left-player", 125, 350, +1);
+        runner.init();
+        runner.setAction(Player.Action.Forward);
+
+        // A player a quarter of the way into a swing, updated there so the last tick is a
+        // real one, and a shuttle that flies across its racket box in that tick
+        swinger = new Player(game, "img/left-player", 125, 350, +1);
+        swinger.init();
+        swinger.setAction(Player.Action.Swing);
+        for (int i = 0; i < 9; i++) swinger.update(dt);
+        java.awt.geom.Rectangle2D box = swinger.getRacketHitBox();
+        target = new Birdie(game, "img/ball.png");
+        target.serve(box.getMinX() - 40, box.getCenterY(), +1);
+        target.prevX = box.getMaxX() + 40;
+        // tryHit moves the shuttle to the contact point and sets the bounce pose, so each
+        // call starts again from these
+        swingerStart = new Player(new PhysicsConfig(), +1);
+        swingerStart.copyStateFrom(swinger);
+        targetStart = new Birdie(new PhysicsConfig());
+        targetStart.copyStateFrom(target);
+    }
+
+    @Override
+    public void advance(int ticks) {
+        for (int i = 0; i < ticks; i++) tick();
+    }
+
+    @Override
+    public void tick() {
+        game.simulate(dt);
+        if (game.headlessDone()) game.startMatch(mode);
+    }
+
+    @Override
+    public double birdieUpdate() {
+        birdie.update(dt);
+        if (!birdie.isInPlay()) birdie.serve(200, 400, +1);
+        return birdie.x;
+    }
+
+    @Override
+    public double playerUpdate() {
+        double before = runner.x;
+        runner.update(dt);
+        if (runner.x == before) {
+            // Hit a bound, walk the other way
+            runner.setAction(runner.getAction() == Player.Action.Forward
+                    ? Player.Action.Backward : Player.Action.Forward);
+        }
+        return runner.x;
+    }
+
+    @Override
+    public Object racketHitBox() {
+        return swinger.getRacketHitBox();
+    }
+
+    @Override
+    public boolean tryHit() {
+        swinger.copyStateFrom(swingerStart);
+        target.copyStateFrom(targetStart);
+        return swinger.tryHit(target);
+    }
+
+    @Override
+    public boolean swingHits(int tickRate, int phase, double speed) {
+        // At 120 Hz a swing moves one phase a tick, so this finds where and when the racket is at phase
+        Player probe = new Player(new PhysicsConfig(), 125, 350, +1);
+        probe.setAction(Player.Action.Swing);
+        for (int i = 0; i < phase; i++) probe.update(1.0 / 120);
+        java.awt.geom.Rectangle2D box = probe.getRacketHitBox();
+        double meet = phase / 120.0;
+
+        // A shuttle flying in level from the net at speed, timed to be 5 px into that racket box then
+        Birdie shuttle = new Birdie(new PhysicsConfig());
+        shuttle.serve(0, 0, +1, 0);
+        double half = shuttle.getHitBox().getWidth() / 2;
+        shuttle.serve(box.getMaxX() + half - 5 + speed * meet, box.getCenterY(), +1, 0);
+        Player player = new Player(new PhysicsConfig(), 125, 350, +1);
+        player.setAction(Player.Action.Swing);
+        double dt = 1.0 / tickRate;
+        do {
+            shuttle.prevX = shuttle.x;
+            shuttle.prevY = shuttle.y;
+            shuttle.x -= speed * dt;
+            player.update(dt);
+            if (player.tryHit(shuttle)) return true;
+        } while (player.getAction() == Player.Action.Swing);
+        return false;
+    }
+
+    @Override
+    public void paint(Graphics2D graphics) {
+        game.paintFrame(graphics);
+    }
+
+    @Override
+    public void paintDamage(Graphics2D graphics) {
+        game.paintDamage(graphics);
+    }
+
+    @Override
+    public void setUpDrill(int shuttles) {
+        dt = 1.0 / 120;
+        drill = new ShuttlePool(shuttles, new PhysicsConfig());
+        drillRandom = new java.util.Random(1);
+        refillDrill();
+    }
+
+    @Override
+    public int drillTick() {
+        drill.update(dt);
+        refillDrill();
+        return drill.query(150, 380, 40, 40, drillFound);
+    }
+
+    /** Spreads new shuttles over the court with random velocities */
+    private void refillDrill() {
+        while (drill.count() < drill.capacity()) {
+            drill.spawn(drillRandom.nextDouble() * 800, drillRandom.nextDouble() * 450,
+                    (drillRandom.nextDouble() - 0.5) * 1000, -drillRandom.nextDouble() * 800);
+        }
+    }
+}
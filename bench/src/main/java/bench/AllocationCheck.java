@@ -0,0 +1,95 @@
+package bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that the steady-state PlayOne/PlayTwo/Drill frame (two 120 Hz updates and one paint
+ * into an offscreen image) allocates nothing. Every screen of the game is warmed up with real
+ * frames before any is measured, so the JIT has settled and compiled the drawing code with
+ * every path those frames take: the modes play through whole matches (points, match end,
+ * restart), and the drill's shuttles leave the canvas at the top and the side, which a match
+ * only does on a rare high clear. The modes take turns warming up so that none is measured
+ * on code compiled for another alone. What each warm-up allocates is first use (loading, caches
+ * filling, the JIT) and is reported on its own. Then each mode counts the bytes this thread
+ * allocates over 10k frames, and the check exits with 1 if any.
+ * Runs in the verify phase; run from the repository root so img/ resolves.
+ */
+public class AllocationCheck {
+    private static final String[] MODES = {"PlayOne", "PlayTwo", "Drill"};
+    // Screens that are warmed up but not measured: they are not played for long
+    private static final String[] SCREENS = {"Menu", "Inst", "PlayOneEnd", "PlayTwoEnd"};
+    private static final int WARMUP_FRAMES = 60 * 60 * 20;      // 20 game minutes, a few whole matches
+    private static final int WARMUP_ROUNDS = 4;
+    private static final int SCREEN_FRAMES = 2000;
+    private static final int FRAMES = 10000;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        BufferedImage image = new BufferedImage(800, 500, BufferedImage.TYPE_INT_RGB);
+
+        // First use of every screen, reported but not checked
+        for (String screen : SCREENS) {
+            GameHooks hooks = GameHooks.create();
+            Graphics2D graphics = image.createGraphics();
+            long before = threads.getThreadAllocatedBytes(thread);
+            hooks.setUp(screen, false);
+            frames(hooks, graphics, SCREEN_FRAMES);
+            graphics.dispose();
+            System.out.printf("%s warm-up: %d bytes over %d frames (first use, not checked)%n",
+                    screen, threads.getThreadAllocatedBytes(thread) - before, SCREEN_FRAMES);
+        }
+        GameHooks[] modes = new GameHooks[MODES.length];
+        Graphics2D[] graphics = new Graphics2D[MODES.length];
+        long[] warmup = new long[MODES.length];
+        for (int i = 0; i < MODES.length; i++) {
+            modes[i] = GameHooks.create();
+            graphics[i] = image.createGraphics();
+            long before = threads.getThreadAllocatedBytes(thread);
+            modes[i].setUp(MODES[i], false);
+            warmup[i] = threads.getThreadAllocatedBytes(thread) - before;
+        }
+        // In rounds, so code the modes share is compiled for all of them and no mode
+        // deoptimizes it under another one's measurement
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < MODES.length; i++) {
+                long before = threads.getThreadAllocatedBytes(thread);
+                frames(modes[i], graphics[i], WARMUP_FRAMES / WARMUP_ROUNDS);
+                warmup[i] += threads.getThreadAllocatedBytes(thread) - before;
+            }
+        }
+        for (int i = 0; i < MODES.length; i++) {
+            System.out.printf("%s warm-up: %d bytes over %d frames (first use, not checked)%n",
+                    MODES[i], warmup[i], WARMUP_FRAMES);
+        }
+
+        // Steady state, once nothing is used for the first time any more
+        boolean failed = false;
+        for (int i = 0; i < MODES.length; i++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            frames(modes[i], graphics[i], FRAMES);
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            graphics[i].dispose();
+
+            System.out.printf("%s: %d bytes over %d frames (%.1f bytes/frame)%n",
+                    MODES[i], allocated, FRAMES, (double) allocated / FRAMES);
+            if (allocated > 0) failed = true;
+        }
+        if (failed) {
+            System.out.println("FAILED: the steady-state frame path allocates");
+            System.exit(1);
+        }
+    }
+
+    private static void frames(GameHooks hooks, Graphics2D graphics, int count) {
+        for (int i = 0; i < count; i++) {
+            hooks.tick();
+            hooks.tick();
+            hooks.paint(graphics);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+import java.awt.Graphics2D;
+
+/**
+ * What the benchmarks drive in the game. The game lives in the default package,
+ * which named packages cannot import, so the implementation ({@code GameHooksImpl})
+ * sits in the default package and is loaded by name.
+ */
+public interface GameHooks {
+
+    /** Builds a game in "PlayOne" or "PlayTwo" with robots on both sides; headless skips images and audio */
+    void setUp(String mode, boolean headless);
+
+    /** Runs ticks of the match so the state is mid-rally */
+    void advance(int ticks);
+
+    /** One full game tick (update and the subsystems due) at the fixed tick length, restarting the match when it ends */
+    void tick();
+
+    /** One Birdie.update step, re-serving when the shuttle lands */
+    double birdieUpdate();
+
+    /** One Player.update step, turning around at the movement bounds */
+    double playerUpdate();
+
+    /** Player.getRacketHitBox for a player mid-swing */
+    Object racketHitBox();
+
+    /** Player.tryHit for a player mid-swing against a shuttle that crossed the racket box in the last tick; true when it hits */
+    boolean tryHit();
+
+    /**
+     * Whether a player swinging at tickRate updates a second hits a shuttle flying in level from
+     * the net at speed, timed to just reach the racket as the swing gets to phase (36 to a swing,
+     * 18 at the end of the forward half)
+     */
+    boolean swingHits(int tickRate, int phase, double speed);
+
+    /** paintComponent of the current frame into graphics */
+    void paint(Graphics2D graphics);
+
+    /** The current frame painted over the last one in graphics, only where it changed */
+    void paintDamage(Graphics2D graphics);
+
+    /** A drill shuttle pool kept topped up at the given number of shuttles in flight */
+    void setUpDrill(int shuttles);
+
+    /** One ShuttlePool.update at the fixed tick length plus a racket broadphase query, refilling landed shuttles */
+    int drillTick();
+
+    static GameHooks create() {
+        try {
+            return (GameHooks) Class.forName("GameHooksImpl").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("GameHooksImpl is missing from the benchmark build", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package bench;
+
+/**
+ * Checks that a swing hits at the tick rates a slow machine falls back to. At 30 and 60
+ * updates a second, a shuttle flies in from the net at return speed, timed to just reach
+ * the racket as the swing gets to each pose of its forward half, and the player must hit
+ * it. The last of those poses fall in the tick the swing leaves its hitting window in, so
+ * a hit test that skips that tick misses them. It also makes sure the shuttle
+ * HitDetectionBenchmark.tryHit times is hit, twice over. Exits with 1 on a miss.
+ * Runs in the verify phase next to {@link AllocationCheck}.
+ */
+public class HitCheck {
+    private static final int[] TICK_RATES = {30, 60};
+    private static final int FORWARD_PHASES = 18;
+    private static final double SPEED = 600;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        GameHooks hooks = GameHooks.create();
+        hooks.setUp("PlayOne", true);
+
+        // HitDetectionBenchmark.tryHit has to time a hit, not a quick miss
+        boolean failed = !hooks.tryHit() || !hooks.tryHit();
+        System.out.println("benchmarked tryHit: " + (failed ? "missed" : "hit"));
+        for (int rate : TICK_RATES) {
+            StringBuilder missed = new StringBuilder();
+            for (int phase = 0; phase <= FORWARD_PHASES; phase++) {
+                if (!hooks.swingHits(rate, phase, SPEED)) missed.append(' ').append(phase);
+            }
+            System.out.printf("%d Hz: swing phases 0-%d, missed:%s%n",
+                    rate, FORWARD_PHASES, missed.length() == 0 ? " none" : missed);
+            if (missed.length() > 0) failed = true;
+        }
+        if (failed) {
+            System.out.println("FAILED: the racket misses shuttles it meets between ticks");
+            System.exit(1);
+        }
+    }
+}
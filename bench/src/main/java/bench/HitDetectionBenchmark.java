@@ -0,0 +1,32 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Player.getRacketHitBox and Player.tryHit for a player mid-swing */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HitDetectionBenchmark {
+    private GameHooks hooks;
+
+    @Setup
+    public void setUp() {
+        hooks = GameHooks.create();
+        hooks.setUp("PlayOne", true);
+    }
+
+    @Benchmark
+    public Object racketHitBox() {
+        return hooks.racketHitBox();
+    }
+
+    @Benchmark
+    public boolean tryHit() {
+        return hooks.tryHit();
+    }
+}
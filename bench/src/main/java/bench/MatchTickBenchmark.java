@@ -0,0 +1,30 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** A full Stickman_Badminton.update tick of a robot-vs-robot match, headless */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class MatchTickBenchmark {
+    @Param({"PlayOne", "PlayTwo"})
+    public String mode;
+
+    private GameHooks hooks;
+
+    @Setup
+    public void setUp() {
+        hooks = GameHooks.create();
+        hooks.setUp(mode, true);
+    }
+
+    @Benchmark
+    public void tick() {
+        hooks.tick();
+    }
+}
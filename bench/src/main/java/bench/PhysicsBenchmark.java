@@ -0,0 +1,32 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Birdie.update and Player.update, one fixed 120 Hz step per op */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PhysicsBenchmark {
+    private GameHooks hooks;
+
+    @Setup
+    public void setUp() {
+        hooks = GameHooks.create();
+        hooks.setUp("PlayOne", true);
+    }
+
+    @Benchmark
+    public double birdieUpdate() {
+        return hooks.birdieUpdate();
+    }
+
+    @Benchmark
+    public double playerUpdate() {
+        return hooks.playerUpdate();
+    }
+}
@@ -0,0 +1,51 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * paintComponent of a mid-rally frame into an offscreen 800x500 image: the whole frame,
+ * and (paintDirty) only the rectangles the windowed presenters repaint, around the
+ * players and the shuttle. Loads the real sprites, so run from the repository root.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+    @Param({"PlayOne", "PlayTwo"})
+    public String mode;
+
+    private GameHooks hooks;
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    @Setup
+    public void setUp() {
+        hooks = GameHooks.create();
+        hooks.setUp(mode, false);
+        hooks.advance(240);
+        image = new BufferedImage(800, 500, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public void paint() {
+        hooks.paint(graphics);
+    }
+
+    @Benchmark
+    public void paintDirty() {
+        hooks.paintDamage(graphics);
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes assets in parallel on a small pool of daemon threads, which go away once loading
+ * has been idle for a while. Which assets are loaded, and how long they are kept, is up to
+ * {@link AssetManager}.
+ *
+ * Also keeps the startup timing report: named phases marked by the game, and how long
+ * each asset waited in the queue and took to decode.
+ */
+public class AssetLoader {
+    /** Timing of one loaded asset */
+    private static final class Record {
+        final String name;
+        String thread;
+        long queued, started, finished;
+
+        Record(String name, long queued) {
+            this.name = name;
+            this.queued = queued;
+        }
+    }
+
+    private final long created = System.nanoTime();
+    private final long jvmUptime = java.lang.management.ManagementFactory.getRuntimeMXBean().getUptime();
+    private final int threads;
+    private final ThreadPoolExecutor pool;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Filled in as things happen, read by report()
+    private final List<Record> records = Collections.synchronizedList(new ArrayList<Record>());
+    private final List<String> phases = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Long> phaseTimes = Collections.synchronizedList(new ArrayList<Long>());
+
+    /** A loader using up to 4 threads, fewer on small machines */
+    public AssetLoader() {
+        this(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+    }
+
+    public AssetLoader(int threads) {
+        this.threads = threads;
+        final AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 2, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AssetLoader-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** Queues loader, timed under name in the report */
+    public <T> Future<T> load(String name, final Callable<T> loader) {
+        final Record record = new Record(name, System.nanoTime());
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                record.thread = Thread.currentThread().getName();
+                record.started = System.nanoTime();
+                try {
+                    return loader.call();
+                } finally {
+                    record.finished = System.nanoTime();
+                    records.add(record);
+                    pending.decrementAndGet();
+                }
+            }
+        });
+        pending.incrementAndGet();
+        pool.execute(task);
+        return task;
+    }
+
+    /** Waits for an asset. Failures inside the loader are rethrown unchecked. */
+    public static <T> T get(Future<T> asset) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return asset.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Asset failed to load", e.getCause());
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Number of assets queued or decoding */
+    public int pending() {
+        return pending.get();
+    }
+
+    /** True when nothing is queued or decoding */
+    public boolean isIdle() {
+        return pending.get() == 0;
+    }
+
+    /** Records that the named startup phase has just finished */
+    public void mark(String phase) {
+        synchronized (phases) {
+            phases.add(phase);
+            phaseTimes.add(System.nanoTime());
+        }
+    }
+
+    /** The startup timing report, for printing */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Startup (ms since the engine was created, %d ms after JVM start)%n", jvmUptime));
+        synchronized (phases) {
+            long previous = created;
+            for (int i = 0; i < phases.size(); i++) {
+                long t = phaseTimes.get(i);
+                sb.append(String.format("  %-22s %7.1f  (+%.1f)%n", phases.get(i), ms(t - created), ms(t - previous)));
+                previous = t;
+            }
+        }
+
+        List<Record> done;
+        synchronized (records) {
+            done = new ArrayList<Record>(records);
+        }
+        Collections.sort(done, new Comparator<Record>() {
+            @Override
+            public int compare(Record a, Record b) {
+                return Long.compare(b.finished - b.started, a.finished - a.started);
+            }
+        });
+        long busy = 0, first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        for (Record r : done) {
+            busy += r.finished - r.started;
+            first = Math.min(first, r.started);
+            last = Math.max(last, r.finished);
+        }
+        double wall = done.isEmpty() ? 0 : ms(last - first);
+        sb.append(String.format("Assets: %d on %d threads, %.1f ms of decoding in %.1f ms (%.1fx parallel)%n",
+                done.size(), threads, ms(busy), wall, wall > 0 ? ms(busy) / wall : 0));
+        sb.append(String.format("  %-36s %8s %8s  %s%n", "asset", "queued", "decode", "thread"));
+        for (Record r : done) {
+            sb.append(String.format("  %-36s %8.1f %8.1f  %s%n",
+                    r.name, ms(r.started - r.queued), ms(r.finished - r.started), r.thread));
+        }
+        return sb.toString();
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+}
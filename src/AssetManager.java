@@ -0,0 +1,177 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Shared, reference-counted assets keyed by name (usually the path). Asking for an asset
+ * that is loading or loaded returns the same Future and adds a reference; release() drops
+ * one. Assets nobody references stay cached, and are evicted least recently released first
+ * once the assets held add up to more than the budget.
+ *
+ * Sizes come from a {@link Meter}, so the manager does not need to know what an asset is.
+ * They are measured whenever they are needed rather than once at load, so what an asset
+ * grows afterwards (a sprite's copy at the size it is drawn, its conversion for another
+ * screen) counts too. Native bytes are counted against the budget as well, since on a
+ * small machine they come out of the same RAM.
+ */
+public class AssetManager {
+    /** Measures loaded assets */
+    public interface Meter {
+        long heapBytes(Object asset);
+        long nativeBytes(Object asset);
+    }
+
+    private static final class Entry {
+        final String name;
+        Future<?> value;
+        int refs;
+        long released;           // clock tick of the last release, for LRU
+        Object asset;            // set once loaded
+
+        Entry(String name) {
+            this.name = name;
+        }
+    }
+
+    private final AssetLoader loader;
+    private final Meter meter;
+    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+    private long budget = Long.MAX_VALUE;
+    private long clock = 0;
+    private long evictions = 0;
+
+    public AssetManager(AssetLoader loader, Meter meter) {
+        this.loader = loader;
+        this.meter = meter;
+    }
+
+    /** Gets the named asset, loading it with loader unless it is already loading or loaded */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> Future<T> acquire(String name, Callable<T> loader) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = new Entry(name);
+            entries.put(name, entry);
+            entry.value = this.loader.load(name, measured(entry, loader));
+        }
+        entry.refs++;
+        return (Future<T>) entry.value;
+    }
+
+    /** Drops a reference; an asset nobody references can be evicted to stay in the budget */
+    public synchronized void release(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null || entry.refs == 0) return;
+        entry.refs--;
+        entry.released = ++clock;
+        trim();
+    }
+
+    /** Sets how many bytes (heap plus native) the loaded assets may hold, and evicts down to it */
+    public synchronized void setBudget(long bytes) {
+        budget = bytes;
+        trim();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /** Bytes on the heap held by loaded assets */
+    public synchronized long heapBytes() {
+        long total = 0;
+        for (Entry e : entries.values()) total += heapOf(e);
+        return total;
+    }
+
+    /** Bytes outside the heap (audio lines, accelerated image copies) held by loaded assets */
+    public synchronized long nativeBytes() {
+        long total = 0;
+        for (Entry e : entries.values()) total += nativeOf(e);
+        return total;
+    }
+
+    /** Number of assets loading or loaded */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** Every asset with its references and sizes, for printing */
+    public synchronized String report() {
+        List<Entry> list = new ArrayList<Entry>(entries.values());
+        Collections.sort(list, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.name.compareTo(b.name);
+            }
+        });
+        long heap = 0, nat = 0;
+        StringBuilder rows = new StringBuilder();
+        for (Entry e : list) {
+            long h = heapOf(e), n = nativeOf(e);
+            heap += h;
+            nat += n;
+            rows.append(String.format("  %-36s %4d %10s %10s%n", e.name, e.refs,
+                    e.asset == null ? "loading" : kb(h), e.asset == null ? "" : kb(n)));
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Assets: %d held, %s KB heap, %s KB native, budget %s, %d evicted%n",
+                list.size(), kb(heap), kb(nat), budget == Long.MAX_VALUE ? "none" : kb(budget) + " KB", evictions));
+        sb.append(String.format("  %-36s %4s %10s %10s%n", "asset", "refs", "heap KB", "native KB"));
+        sb.append(rows);
+        return sb.toString();
+    }
+
+    /** Wraps loader so the asset is counted, and the budget enforced, once it has loaded */
+    private <T> Callable<T> measured(final Entry entry, final Callable<T> loader) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                T value = loader.call();
+                synchronized (AssetManager.this) {
+                    entry.asset = value;
+                    trim();
+                }
+                return value;
+            }
+        };
+    }
+
+    /** Heap bytes the asset holds now, 0 while it is loading or if it failed to */
+    private long heapOf(Entry e) {
+        return e.asset == null ? 0 : meter.heapBytes(e.asset);
+    }
+
+    private long nativeOf(Entry e) {
+        return e.asset == null ? 0 : meter.nativeBytes(e.asset);
+    }
+
+    /** Evicts unreferenced, loaded assets, least recently released first, until within the budget */
+    private void trim() {
+        if (budget == Long.MAX_VALUE) return;
+        long held = 0;
+        for (Entry e : entries.values()) held += heapOf(e) + nativeOf(e);
+        while (held > budget) {
+            Entry coldest = null;
+            for (Entry e : entries.values()) {
+                if (e.refs == 0 && e.asset != null && (coldest == null || e.released < coldest.released)) coldest = e;
+            }
+            if (coldest == null) return;
+            entries.remove(coldest.name);
+            held -= heapOf(coldest) + nativeOf(coldest);
+            evictions++;
+        }
+    }
+
+    private static String kb(long bytes) {
+        return String.valueOf((bytes + 1023) / 1024);
+    }
+}
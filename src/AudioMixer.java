@@ -0,0 +1,314 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * A software mixer on its own thread, writing every sound to one SourceDataLine.
+ *
+ * Sounds play on a fixed pool of voices, and one {@link MusicStream} beside them. When all
+ * voices are busy a new sound takes the one with the lowest priority (the oldest of those),
+ * unless every voice is playing something more important. The game talks to the mixer
+ * through a bounded lock-free queue, so play() only writes a few fields and never blocks,
+ * allocates or touches the audio device.
+ *
+ * Output latency is at most the line buffer plus one mixing period: with the defaults,
+ * 1024 + 256 frames, about 29 ms at 44.1 kHz.
+ */
+public class AudioMixer implements Runnable {
+    /** The format everything is mixed and played in: 44.1 kHz, 16 bit, stereo */
+    public static final float RATE = 44100f;
+    public static final AudioFormat FORMAT = new AudioFormat(RATE, 16, 2, true, false);
+
+    private static final int PERIOD = 256;                 // frames mixed per pass
+    private static final int LINE_FRAMES = 4 * PERIOD;     // frames buffered in the line
+    private static final int QUEUE = 64;                   // commands, a power of two
+
+    private static final int PLAY = 0, STOP = 1, MUSIC = 2;
+
+    // Voices, as parallel arrays; only the mixer thread touches them
+    private final short[][] voiceSamples;
+    private final int[] voicePos;
+    private final float[] voiceGain;
+    private final int[] voicePriority;
+    private final boolean[] voiceLoop;
+    private final long[] voiceStart;
+    private long started = 0;
+    private volatile int active = 0;
+
+    // Streamed music, mixed alongside the voices; mixer thread only
+    private MusicStream music;
+    private float musicGain;
+
+    // Command ring (bounded multi-producer, single-consumer queue). A slot is free for the
+    // producer with ticket t when its sequence is t, and holds a command for the consumer
+    // when its sequence is t + 1.
+    private final AtomicLongArray sequence = new AtomicLongArray(QUEUE);
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0;
+    private final int[] cmdType = new int[QUEUE];
+    private final short[][] cmdSamples = new short[QUEUE][];
+    private final float[] cmdGain = new float[QUEUE];
+    private final int[] cmdPriority = new int[QUEUE];
+    private final boolean[] cmdLoop = new boolean[QUEUE];
+    private final MusicStream[] cmdMusic = new MusicStream[QUEUE];
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Mixing buffers
+    private final float[] mix = new float[PERIOD * 2];
+    private final byte[] out = new byte[PERIOD * 4];
+
+    private final SourceDataLine line;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /** Opens the default output line and starts mixing. Throws if there is no audio device. */
+    public AudioMixer(int voices) throws Exception {
+        this(voices, AudioSystem.getSourceDataLine(FORMAT));
+    }
+
+    /** Starts mixing into line, which must accept {@link #FORMAT} */
+    public AudioMixer(int voices, SourceDataLine line) throws Exception {
+        voiceSamples = new short[voices][];
+        voicePos = new int[voices];
+        voiceGain = new float[voices];
+        voicePriority = new int[voices];
+        voiceLoop = new boolean[voices];
+        voiceStart = new long[voices];
+        for (int i = 0; i < QUEUE; i++) sequence.set(i, i);
+
+        this.line = line;
+        line.open(FORMAT, LINE_FRAMES * 4);
+        line.start();
+
+        thread = new Thread(this, "AudioMixer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Queues samples (interleaved stereo in {@link #FORMAT}) to start playing. A looping sound
+     * that is already playing restarts from the beginning instead. Returns false if the queue
+     * was full and the sound was dropped.
+     */
+    public boolean play(short[] samples, float gain, int priority, boolean loop) {
+        return offer(PLAY, samples, null, gain, priority, loop);
+    }
+
+    /** Queues stopping every voice playing samples */
+    public boolean stop(short[] samples) {
+        return offer(STOP, samples, null, 0, 0, false);
+    }
+
+    /** Queues music to loop from its start, replacing any music playing; null stops the music */
+    public boolean playMusic(MusicStream stream, float gain) {
+        return offer(MUSIC, null, stream, gain, 0, true);
+    }
+
+    /** Number of voices playing, music included, as of the last mixing pass */
+    public int getActiveVoices() {
+        return active;
+    }
+
+    /** Number of commands dropped because the queue was full */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /** Stops mixing and closes the line */
+    public void close() {
+        running = false;
+    }
+
+    private boolean offer(int type, short[] samples, MusicStream stream, float gain, int priority, boolean loop) {
+        long ticket = tail.get();
+        int slot;
+        while (true) {
+            slot = (int) (ticket & (QUEUE - 1));
+            long diff = sequence.get(slot) - ticket;
+            if (diff == 0) {
+                if (tail.compareAndSet(ticket, ticket + 1)) break;
+                ticket = tail.get();
+            } else if (diff < 0) {
+                // Full: the mixer has fallen a whole queue behind
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                ticket = tail.get();
+            }
+        }
+        cmdType[slot] = type;
+        cmdSamples[slot] = samples;
+        cmdMusic[slot] = stream;
+        cmdGain[slot] = gain;
+        cmdPriority[slot] = priority;
+        cmdLoop[slot] = loop;
+        sequence.lazySet(slot, ticket + 1);
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            drainCommands();
+            mixPeriod();
+
+            // Blocks while the line is full, which paces the thread
+            line.write(out, 0, out.length);
+        }
+        line.stop();
+        line.close();
+    }
+
+    private void drainCommands() {
+        while (true) {
+            int slot = (int) (head & (QUEUE - 1));
+            if (sequence.get(slot) != head + 1) return;
+            if (cmdType[slot] == PLAY) {
+                start(cmdSamples[slot], cmdGain[slot], cmdPriority[slot], cmdLoop[slot]);
+            } else if (cmdType[slot] == MUSIC) {
+                music = cmdMusic[slot];
+                musicGain = cmdGain[slot];
+                if (music != null) music.rewind();
+            } else {
+                for (int v = 0; v < voiceSamples.length; v++) {
+                    if (voiceSamples[v] == cmdSamples[slot]) voiceSamples[v] = null;
+                }
+            }
+            cmdSamples[slot] = null;
+            cmdMusic[slot] = null;
+            sequence.lazySet(slot, head + QUEUE);
+            head++;
+        }
+    }
+
+    private void start(short[] samples, float gain, int priority, boolean loop) {
+        int voice = -1;
+
+        // A looping sound already playing restarts on its own voice
+        for (int v = 0; loop && voice < 0 && v < voiceSamples.length; v++) {
+            if (voiceLoop[v] && voiceSamples[v] == samples) voice = v;
+        }
+
+        // Otherwise a free voice
+        for (int v = 0; voice < 0 && v < voiceSamples.length; v++) {
+            if (voiceSamples[v] == null) voice = v;
+        }
+
+        // Otherwise steal the least important, oldest voice, unless it matters more than this
+        if (voice < 0) {
+            int victim = 0;
+            for (int v = 1; v < voiceSamples.length; v++) {
+                if (voicePriority[v] < voicePriority[victim]
+                        || (voicePriority[v] == voicePriority[victim] && voiceStart[v] < voiceStart[victim])) {
+                    victim = v;
+                }
+            }
+            if (voicePriority[victim] > priority) return;
+            voice = victim;
+        }
+
+        voiceSamples[voice] = samples;
+        voicePos[voice] = 0;
+        voiceGain[voice] = gain;
+        voicePriority[voice] = priority;
+        voiceLoop[voice] = loop;
+        voiceStart[voice] = ++started;
+    }
+
+    private void mixPeriod() {
+        Arrays.fill(mix, 0f);
+        int playing = 0;
+        for (int v = 0; v < voiceSamples.length; v++) {
+            short[] s = voiceSamples[v];
+            if (s == null) continue;
+            if (s.length == 0) {
+                voiceSamples[v] = null;
+                continue;
+            }
+            float gain = voiceGain[v];
+            int pos = voicePos[v];
+            int k = 0;
+            while (k < mix.length) {
+                int n = Math.min(mix.length - k, s.length - pos);
+                for (int i = 0; i < n; i++) mix[k + i] += s[pos + i] * gain;
+                k += n;
+                pos += n;
+                if (pos == s.length) {
+                    if (!voiceLoop[v]) break;
+                    pos = 0;
+                }
+            }
+            if (pos == s.length) {
+                voiceSamples[v] = null;
+            } else {
+                voicePos[v] = pos;
+                playing++;
+            }
+        }
+        if (music != null) {
+            music.mixInto(mix, PERIOD, musicGain);
+            playing++;
+        }
+        active = playing;
+
+        for (int i = 0; i < mix.length; i++) {
+            float f = mix[i];
+            int sample = f > 32767f ? 32767 : (f < -32768f ? -32768 : (int) f);
+            out[2 * i] = (byte) sample;
+            out[2 * i + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    /**
+     * Converts PCM audio (8 or 16 bit, mono or stereo, any rate) to interleaved stereo
+     * samples in {@link #FORMAT}. Returns null for formats it cannot read.
+     */
+    public static short[] toSamples(AudioFormat format, byte[] data) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+        boolean signed = AudioFormat.Encoding.PCM_SIGNED.equals(encoding);
+        if (!signed && !AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding)) return null;
+        int bits = format.getSampleSizeInBits();
+        int channels = format.getChannels();
+        if ((bits != 8 && bits != 16) || channels < 1 || channels > 2) return null;
+
+        int bytes = bits / 8;
+        int frames = data.length / (bytes * channels);
+        short[] source = new short[frames * 2];
+        for (int f = 0; f < frames; f++) {
+            for (int c = 0; c < 2; c++) {
+                int at = (f * channels + Math.min(c, channels - 1)) * bytes;
+                int value;
+                if (bits == 8) {
+                    value = signed ? data[at] << 8 : ((data[at] & 0xff) - 128) << 8;
+                } else if (format.isBigEndian()) {
+                    value = (data[at] << 8) | (data[at + 1] & 0xff);
+                } else {
+                    value = (data[at + 1] << 8) | (data[at] & 0xff);
+                }
+                if (bits == 16 && !signed) value = (value & 0xffff) - 32768;
+                source[2 * f + c] = (short) value;
+            }
+        }
+
+        // Linear resampling to the mixing rate
+        float rate = format.getSampleRate();
+        if (rate == RATE || rate <= 0 || frames < 2) return source;
+        int outFrames = (int) ((long) frames * (long) RATE / (long) rate);
+        short[] resampled = new short[outFrames * 2];
+        double step = rate / RATE;
+        for (int f = 0; f < outFrames; f++) {
+            double at = f * step;
+            int i = Math.min((int) at, frames - 2);
+            double t = Math.min(1.0, at - i);
+            for (int c = 0; c < 2; c++) {
+                resampled[2 * f + c] = (short) Math.round(source[2 * i + c] * (1 - t) + source[2 * (i + 1) + c] * t);
+            }
+        }
+        return resampled;
+    }
+}
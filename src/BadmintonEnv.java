@@ -0,0 +1,204 @@
+import java.util.Random;
+
+/**
+ * A one-player match as a reinforcement-learning environment: reset(), step(action),
+ * observe() and a reward per step. The agent is the left player and the standard robot
+ * (Stickman_Badminton's driveRobot) the right one; a step is one 120 Hz tick of the
+ * PlayOne rules, in the same order as the game, on sprite-less {@link Player}s and a
+ * {@link Birdie} with no engine. Every random draw comes from the environment's own
+ * seeded generator, so an episode depends only on its seed and the actions.
+ */
+public class BadmintonEnv {
+    /** What the agent can do on a step */
+    public static final int STAND = 0, FORWARD = 1, BACKWARD = 2, SWING = 3, JUMP = 4;
+    public static final int ACTIONS = 5;
+
+    /** Floats written by observe() */
+    public static final int OBSERVATION_SIZE = 16;
+
+    /** Length of a step, in seconds: the game's fixed 120 Hz tick, in whole nanoseconds as GameEngine has it */
+    public static final double DT = (1000000000L / 120) / 1e9;
+
+    /** Steps after which an unfinished match is cut off: ten minutes of play */
+    public static final int MAX_STEPS = 10 * 60 * 120;
+
+    private static final double NET_X = 400;
+
+    private final PhysicsConfig physics;
+    private final TrajectoryPredictor predictor;
+    private final Random random = new Random();
+    private Player left, right;
+    private Birdie birdie;
+    private boolean nextServerLeft;
+    private int scoreLeft, scoreRight;
+    private int steps;
+    private boolean done;
+
+    public BadmintonEnv(PhysicsConfig physics, long seed) {
+        this.physics = physics;
+        this.predictor = new TrajectoryPredictor(physics);
+        reset(seed);
+    }
+
+    /** Starts a new match, with the generator reseeded */
+    public void reset(long seed) {
+        random.setSeed(seed);
+        reset();
+    }
+
+    /** Starts a new match, the generator carrying on from the last one */
+    public void reset() {
+        left = new Player(physics, 200 - 75, 350, +1);
+        right = new Player(physics, 600 - 75, 350, -1);
+        left.init();
+        right.init();
+        birdie = new Birdie(physics);
+        nextServerLeft = true;
+        scoreLeft = 0;
+        scoreRight = 0;
+        steps = 0;
+        done = false;
+    }
+
+    /**
+     * Plays one tick with the agent doing action; returns the reward: 1 when the agent wins a
+     * point, -1 when it loses one, 0 otherwise. Moving or standing does not cut a swing or
+     * serve short; SWING serves instead when the agent is due to. After isDone() call reset().
+     */
+    public float step(int action) {
+        if (done) throw new IllegalStateException("step() after the match ended; reset() first");
+        steps++;
+        control(action);
+
+        left.update(DT);
+        right.update(DT);
+        Stickman_Badminton.driveRobot(right, birdie, predictor, DT);
+
+        // Serve when the serve animation is over; the robot always starts its own
+        if (!birdie.isInPlay()) {
+            if (nextServerLeft && left.consumeServeFinished()) serveFrom(left);
+            if (!nextServerLeft) {
+                right.setAction(Player.Action.Serving);
+                if (right.consumeServeFinished()) serveFrom(right);
+            }
+        }
+
+        boolean wasInPlay = birdie.isInPlay();
+        birdie.update(DT);
+
+        // Same bounces as the game: the left racket adds up to 50% speed, the right up to 30%
+        if (birdie.isInPlay()) {
+            if (left.tryHit(birdie)) {
+                double angleRad = Math.toRadians(left.getRacketAngle());
+                double bounceSpeed = physics.birdieBounceSpeed * (1 + random.nextDouble() * 0.5);
+                birdie.vx = Math.sin(angleRad) * bounceSpeed;
+                birdie.vy = -Math.cos(angleRad / 2) * bounceSpeed;
+            } else if (right.tryHit(birdie)) {
+                double angleRad = Math.toRadians(right.getRacketAngle());
+                double bounceSpeed = physics.birdieBounceSpeed * (1 + random.nextDouble() * 0.3);
+                birdie.vx = -Math.sin(angleRad) * bounceSpeed;
+                birdie.vy = -Math.cos(angleRad / 2) * bounceSpeed;
+            }
+        }
+
+        float reward = 0;
+        if (wasInPlay && !birdie.isInPlay()) {
+            if (birdie.x < NET_X) {
+                scoreRight++;
+                nextServerLeft = false;
+                reward = -1;
+            } else {
+                scoreLeft++;
+                nextServerLeft = true;
+                reward = 1;
+            }
+            left.resetPosition();
+            right.resetPosition();
+            left.setSwingBounds();
+            right.setSwingBounds();
+        }
+        predictor.track(birdie, DT);
+
+        done = scoreLeft >= Stickman_Badminton.WIN_SCORE || scoreRight >= Stickman_Badminton.WIN_SCORE
+                || steps >= MAX_STEPS;
+        return reward;
+    }
+
+    /** The agent's action, as the keys would set it */
+    private void control(int action) {
+        Player.Action current = left.getAction();
+        boolean busy = current == Player.Action.Swing || current == Player.Action.Serving;
+        switch (action) {
+            case STAND:
+                if (!busy) left.setAction(Player.Action.Standing);
+                break;
+            case FORWARD:
+                if (!busy) left.setAction(Player.Action.Forward);
+                break;
+            case BACKWARD:
+                if (!busy) left.setAction(Player.Action.Backward);
+                break;
+            case SWING:
+                if (!birdie.isInPlay() && nextServerLeft) left.setAction(Player.Action.Serving);
+                else left.setAction(Player.Action.Swing);
+                break;
+            case JUMP:
+                left.jump();
+                break;
+            default:
+                throw new IllegalArgumentException("no action " + action);
+        }
+    }
+
+    private void serveFrom(Player p) {
+        right.setRestrictedBounds();
+        left.setRestrictedBounds();
+        birdie.serve(p.x + 75, p.y + 75, p.getServeDir(), random.nextDouble());
+    }
+
+    /**
+     * Writes the observation to out[offset..offset + OBSERVATION_SIZE); positions are over
+     * the court size, speeds over 1000 px/s and flags 0 or 1:
+     * <pre>
+     *  0 agent x         5 robot x          10 shuttle vx        14 agent score / 21
+     *  1 agent y         6 robot y          11 shuttle vy        15 robot score / 21
+     *  2 agent hitting   7 robot hitting    12 shuttle in play
+     *  3 agent swinging  8 shuttle x        13 agent to serve
+     *  4 agent serving   9 shuttle y
+     * </pre>
+     */
+    public void observe(float[] out, int offset) {
+        out[offset]      = (float) (left.x / 800);
+        out[offset + 1]  = (float) (left.y / 500);
+        out[offset + 2]  = left.isHitting() ? 1 : 0;
+        out[offset + 3]  = left.getAction() == Player.Action.Swing ? 1 : 0;
+        out[offset + 4]  = left.getAction() == Player.Action.Serving ? 1 : 0;
+        out[offset + 5]  = (float) (right.x / 800);
+        out[offset + 6]  = (float) (right.y / 500);
+        out[offset + 7]  = right.isHitting() ? 1 : 0;
+        out[offset + 8]  = (float) (birdie.x / 800);
+        out[offset + 9]  = (float) (birdie.y / 500);
+        out[offset + 10] = (float) (birdie.vx / 1000);
+        out[offset + 11] = (float) (birdie.vy / 1000);
+        out[offset + 12] = birdie.isInPlay() ? 1 : 0;
+        out[offset + 13] = !birdie.isInPlay() && nextServerLeft ? 1 : 0;
+        out[offset + 14] = (float) scoreLeft / Stickman_Badminton.WIN_SCORE;
+        out[offset + 15] = (float) scoreRight / Stickman_Badminton.WIN_SCORE;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public int getScoreLeft() {
+        return scoreLeft;
+    }
+
+    public int getScoreRight() {
+        return scoreRight;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+}
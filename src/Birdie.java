@@ -1,46 +1,105 @@
 import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public class Birdie {
     private final GameEngine engine;
-    private final Image image;
+    // The sprite pre-rotated in ROTATIONS steps, since rotated drawImage calls allocate
+    private static final int ROTATIONS = 64;
+    private volatile Image[] rotations;              // picked up by the simulation or the painter
+    private final Future<Image[]> rotationsAsset;    // loading in the background
     private final int size = 30;                // 固定 50×50
     private boolean inPlay = false;
 
     // Physical properties
     public double x, y;
     public double vx, vy;
-    private static final double GRAVITY    = 800;
-    private static final double INIT_SPEED = 500;  // 初始速度
-    private static final double DRAG_H = 0.8;  // 水平阻尼
-    private static final double DRAG_V = 0.5; // 垂直阻尼
-    private static final double BOUNCE_DAMPING = 0.30;
+    // Position at the start of the last update, for render interpolation
+    public double prevX, prevY;
+    // Gravity, serve speed, drag and wall bounce
+    private final PhysicsConfig physics;
+
+    // Reused by getHitBox, so hit tests do not allocate
+    private final Rectangle2D.Double hitBox = new Rectangle2D.Double();
+    // Reused by draw(alpha), which draws the live state
+    private final Snapshot current = new Snapshot();
 
     private double groundTimer = 0;
     private static final double GROUND_SLIDE_DURATION = 0.5; // 0.5 秒
 
     public Birdie(GameEngine engine, String imagePath) {
-        this.engine = engine;
-        this.image  = engine.loadImage(imagePath);
+        this(engine, imagePath, new PhysicsConfig());
+    }
+
+    public Birdie(final GameEngine engine, final String imagePath, PhysicsConfig physics) {
+        this.engine  = engine;
+        this.physics = physics;
+
+        rotationsAsset = engine.loadAsync(imagePath + "@" + ROTATIONS, new Callable<Image[]>() {
+            @Override
+            public Image[] call() {
+                Image image = engine.loadImage(imagePath);
+                Image[] frames = new Image[ROTATIONS];
+                for (int i = 0; i < ROTATIONS; i++) {
+                    frames[i] = engine.rotatedImage(image, size, size, i * 360.0 / ROTATIONS);
+                }
+                return frames;
+            }
+        });
+    }
+
+    /** A birdie with no sprites, for simulating flights ahead (see {@link TrajectoryPredictor}) */
+    Birdie(PhysicsConfig physics) {
+        this.engine = null;
+        this.physics = physics;
+        this.rotationsAsset = null;
+    }
+
+    /** Takes over the flight state of other, so update() continues exactly where it is */
+    void copyStateFrom(Birdie other) {
+        x = other.x;
+        y = other.y;
+        vx = other.vx;
+        vy = other.vy;
+        prevX = other.prevX;
+        prevY = other.prevY;
+        inPlay = other.inPlay;
+        groundTimer = other.groundTimer;
+    }
+
+    /** Waits for the rotated sprites; spriteFor() does this itself the first time */
+    public void awaitSprites() {
+        if (rotations == null) rotations = AssetLoader.get(rotationsAsset);
     }
 
     /** Serve from the (startX, startY) center，dir = ±1 */
     public void serve(double startX, double startY, int dir) {
+        serve(startX, startY, dir, engine.rand(1.0));
+    }
+
+    /** Serve with lift (0..1) chosen by the caller, for birdies without an engine */
+    public void serve(double startX, double startY, int dir, double lift) {
         this.x       = startX;
         this.y       = startY;
-        this.vx      = dir * INIT_SPEED;
-        this.vy      = -INIT_SPEED * ( 1 + engine.rand(1.0));
+        this.prevX   = startX;
+        this.prevY   = startY;
+        this.vx      = dir * physics.initSpeed;
+        this.vy      = -physics.initSpeed * ( 1 + lift);
         this.inPlay  = true;
     }
 
+    /** The hit box at the current position; the same instance is updated on every call */
     public Rectangle2D getHitBox() {
         // Center (x,y), size SIZE×SIZE
-        return new Rectangle2D.Double(
+        hitBox.setRect(
                 x - size/2.0,
                 y - size /2.0,
                 size,
                 size
         );
+        return hitBox;
     }
     /** Is it still flying on the field */
     public boolean isInPlay() {
@@ -49,6 +108,8 @@ public class Birdie {
 
     /** Update the physics per frame */
     public void update(double dt) {
+        prevX = x;
+        prevY = y;
         if (!inPlay) return;
 
         // Gravity
@@ -73,10 +134,10 @@ public class Birdie {
             // Left and right rebound (Canvas width fixed at 800)
             if (x < 0) {
                 x  = 0;
-                vx = -vx * BOUNCE_DAMPING;
+                vx = -vx * physics.bounceDamping;
             } else if (x > 800) {
                 x  = 800;
-                vx = -vx * BOUNCE_DAMPING;
+                vx = -vx * physics.bounceDamping;
             }
 
             if (x < 425 && x > 375 && y > 400){
@@ -84,42 +145,84 @@ public class Birdie {
             }
 
             // Damping and Gravity
-            vy += GRAVITY * dt;
+            vy += physics.gravity * dt;
 
-            vx *= Math.max(0, 1 - DRAG_H * dt);
-            vy *= Math.max(0, 1 - DRAG_V * dt);
+            vx *= Math.max(0, 1 - physics.dragH * dt);
+            vy *= Math.max(0, 1 - physics.dragV * dt);
             groundTimer = 0;
         }
     }
 
+    /** The pre-rotated sprite closest to the direction of (vx, vy) */
+    public Image spriteFor(double vx, double vy) {
+        Image[] sprites = rotations;
+        if (sprites == null) {
+            awaitSprites();
+            sprites = rotations;
+        }
+
+        // Calculate the rotation Angle: atan2(vy, vx)
+        double angle = Math.toDegrees(Math.atan2(vy, vx));
+        int i = (int) Math.round(angle / 360 * ROTATIONS);
+        return sprites[(i % ROTATIONS + ROTATIONS) % ROTATIONS];
+    }
+
+    /** What draw() needs of the birdie, copied out of the simulation so it can be drawn on another thread */
+    public static final class Snapshot {
+        double x, y, prevX, prevY, vx, vy;
+        boolean inPlay;
+        final Rectangle2D.Double hitBox = new Rectangle2D.Double();
+
+        public Rectangle2D getHitBox() { return hitBox; }
+    }
+
+    /** Copies the state draw() uses into snapshot */
+    public void capture(Snapshot snapshot) {
+        snapshot.x = x;
+        snapshot.y = y;
+        snapshot.prevX = prevX;
+        snapshot.prevY = prevY;
+        snapshot.vx = vx;
+        snapshot.vy = vy;
+        snapshot.inPlay = inPlay;
+        snapshot.hitBox.setRect(getHitBox());
+    }
+
     /** Draw it on the screen and rotate it according to the speed direction */
     public void draw() {
-        if (!inPlay) return;
-
-        // Save the current transform
-        engine.saveCurrentTransform();
+        draw(1.0);
+    }
 
-        // Move to the badminton center
-        engine.translate(x, y);
+    /** Draw it at alpha (0..1) of the way from the previous to the current position */
+    public void draw(double alpha) {
+        capture(current);
+        draw(current, alpha);
+    }
 
-        // Calculate the rotation Angle: atan2(vy, vx) + 90°, as the texture is projected upwards by default
-        double angle = Math.toDegrees(Math.atan2(vy, vx)); //+ Math.PI / 2)
-        engine.rotate(angle);
-        // System.out.println(angle);
+    /** Draw a snapshot at alpha (0..1) of the way from its previous to its current position */
+    public void draw(Snapshot s, double alpha) {
+        if (!s.inPlay) return;
 
-        // Draw the map (offset by size/2 relative to the center point)
-        engine.drawImage(image,
-                -size / 2,
-                -size / 2,
-                size, size);
-//        engine.drawRectangle(
-//                -size / 2,
-//                -size / 2,
-//                size, size);
-        // Restore transform
-        engine.restoreLastTransform();
+        // The badminton center
+        double cx = s.prevX + (s.x - s.prevX) * alpha;
+        double cy = s.prevY + (s.y - s.prevY) * alpha;
 
+        // Draw the map centred on it
+        Image frame = spriteFor(s.vx, s.vy);
+        engine.drawImage(frame,
+                cx - frame.getWidth(null) / 2,
+                cy - frame.getHeight(null) / 2);
     }
 
+    /** Where draw(s, alpha) draws, or an empty box when it draws nothing */
+    public void drawBounds(Snapshot s, double alpha, Rectangle out) {
+        out.setBounds(0, 0, 0, 0);
+        if (!s.inPlay) return;
 
+        double cx = s.prevX + (s.x - s.prevX) * alpha;
+        double cy = s.prevY + (s.y - s.prevY) * alpha;
+        Image frame = spriteFor(s.vx, s.vy);
+        out.setBounds((int) (cx - frame.getWidth(null) / 2), (int) (cy - frame.getHeight(null) / 2),
+                frame.getWidth(null), frame.getHeight(null));
+    }
 }
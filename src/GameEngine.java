@@ -7,8 +7,12 @@ import java.awt.event.*;
 import java.awt.image.*;
 import java.io.*;
 
-import java.util.Stack;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.imageio.*;
 import javax.sound.sampled.*;
@@ -23,6 +27,9 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 	Graphics2D mGraphics;
 	boolean initialised = false;
 
+	// Headless engines have no window, graphics, images or audio
+	final boolean mHeadless;
+
 	//-------------------------------------------------------
 	// Time-Related functions
 	//-------------------------------------------------------
@@ -65,6 +72,15 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 	//-------------------------------------------------------
 	// Function to create the window and display it
 	public void setupWindow(int width, int height) {
+		// No window when headless
+		if(!hasWindow()) return;
+
+		// Active rendering uses a Canvas instead of the Swing panel
+		if(mActiveRendering) {
+			setupActiveWindow(width, height);
+			return;
+		}
+
 		mFrame = new JFrame();
 		mPanel = new GamePanel();
 
@@ -79,37 +95,176 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 		mFrame.setVisible(true);
 
 		mPanel.setDoubleBuffered(true);
-		mPanel.addMouseListener(this);
-		mPanel.addMouseMotionListener(this);
+		mPanel.addMouseListener(mMouseForwarder);
+		mPanel.addMouseMotionListener(mMouseForwarder);
+		mFrame.addWindowListener(mCloseListener);
+
+		registerKeyDispatcher();
+
+		// Resize the window (insets are just the boarders that the Operating System puts on the board)
+		Insets insets = mFrame.getInsets();
+		mFrame.setSize(width + insets.left + insets.right, height + insets.top + insets.bottom);
+	}
 
-		// Register a key event dispatcher to get a turn in handling all
-		// key events, independent of which component currently has the focus
+	// Register a key event dispatcher to get a turn in handling all
+	// key events, independent of which component currently has the focus
+	void registerKeyDispatcher() {
 		KeyboardFocusManager.getCurrentKeyboardFocusManager()
 				.addKeyEventDispatcher(new KeyEventDispatcher() {
 					@Override
 					public boolean dispatchKeyEvent(KeyEvent e) {
-						switch (e.getID()) {
-						case KeyEvent.KEY_PRESSED:
-							GameEngine.this.keyPressed(e);
-							return false;
-						case KeyEvent.KEY_RELEASED:
-							GameEngine.this.keyReleased(e);
-							return false;
-						case KeyEvent.KEY_TYPED:
-							GameEngine.this.keyTyped(e);
-							return false;
-						default:
-							return false; // do not consume the event
-						}
+						// Handled by the next tick, see drainInput()
+						mInput.offer(e);
+						return false; // do not consume the event
 					}
 				});
+	}
 
-		// Resize the window (insets are just the boarders that the Operating System puts on the board)
-		Insets insets = mFrame.getInsets();
-		mFrame.setSize(width + insets.left + insets.right, height + insets.top + insets.bottom);
+	// Key and mouse events from the window, waiting for the next tick
+	final InputQueue mInput = new InputQueue();
+
+	// Keys held down as of the events handled so far, one bit per key code
+	final long[] mKeysDown = new long[4];
+
+	// Returns whether a key is held down. Read it from update(): it only
+	// changes between ticks, so a whole tick sees the same keys.
+	public boolean isKeyDown(int keyCode) {
+		if(keyCode < 0 || keyCode >= mKeysDown.length * 64) return false;
+		return (mKeysDown[keyCode >> 6] & (1L << keyCode)) != 0;
+	}
+
+	// Passes the events that arrived since the last tick to the game, oldest first
+	void drainInput() {
+		AWTEvent e;
+		while((e = mInput.poll()) != null) {
+			if(e instanceof KeyEvent) {
+				KeyEvent key = (KeyEvent) e;
+				if(key.getID() == KeyEvent.KEY_PRESSED) {
+					mHud.keyPressed(key.getKeyCode());
+				}
+				dispatchKey(key);
+			} else if(e instanceof MouseEvent) {
+				dispatchMouse((MouseEvent) e);
+			}
+		}
+
+		// A key release was lost to a full queue: let go of every key held
+		// rather than leave one down until it is pressed again
+		if(mInput.consumeLostRelease()) releaseAllKeys();
+	}
+
+	// Passes a release of every key held to the game, as if the keys had been let go
+	void releaseAllKeys() {
+		for(int code = 0; code < mKeysDown.length * 64; code++) {
+			if(!isKeyDown(code)) continue;
+			dispatchKey(new KeyEvent(eventSource(), KeyEvent.KEY_RELEASED, System.currentTimeMillis(),
+					0, code, KeyEvent.CHAR_UNDEFINED));
+		}
 	}
 
+	// Stands in for the window as the source of events the engine makes up, when
+	// there is no window (headless, or input injected for a replay)
+	Component mEventSource;
+
+	// The window, or a stand-in when there is none: AWT events need a source
+	Component eventSource() {
+		if(mFrame != null) return mFrame;
+		if(mEventSource == null) mEventSource = new Canvas();
+		return mEventSource;
+	}
+
+	// Passes a key event to the game, logging it when recording
+	void dispatchKey(KeyEvent e) {
+		if(mRecorder != null) {
+			mRecorder.key(mTickCount, e.getID(), e.getKeyCode());
+		}
+
+		int code = e.getKeyCode();
+		boolean tracked = code >= 0 && code < mKeysDown.length * 64;
+		switch (e.getID()) {
+		case KeyEvent.KEY_PRESSED:
+			if(tracked) mKeysDown[code >> 6] |= 1L << code;
+			keyPressed(e);
+			break;
+		case KeyEvent.KEY_RELEASED:
+			if(tracked) mKeysDown[code >> 6] &= ~(1L << code);
+			keyReleased(e);
+			break;
+		case KeyEvent.KEY_TYPED:
+			keyTyped(e);
+			break;
+		default:
+			break;
+		}
+	}
+
+	// Passes a mouse event to the game, logging it when recording
+	void dispatchMouse(MouseEvent e) {
+		if(mRecorder != null) {
+			mRecorder.mouse(mTickCount, e.getID(), e.getX(), e.getY(), e.getButton());
+		}
+
+		switch (e.getID()) {
+		case MouseEvent.MOUSE_CLICKED:
+			mouseClicked(e);
+			break;
+		case MouseEvent.MOUSE_PRESSED:
+			mousePressed(e);
+			break;
+		case MouseEvent.MOUSE_RELEASED:
+			mouseReleased(e);
+			break;
+		case MouseEvent.MOUSE_ENTERED:
+			mouseEntered(e);
+			break;
+		case MouseEvent.MOUSE_EXITED:
+			mouseExited(e);
+			break;
+		case MouseEvent.MOUSE_MOVED:
+			mouseMoved(e);
+			break;
+		case MouseEvent.MOUSE_DRAGGED:
+			mouseDragged(e);
+			break;
+		default:
+			break;
+		}
+	}
+
+	// Queues mouse input from the window for the next tick
+	final MouseAdapter mMouseForwarder = new MouseAdapter() {
+		@Override
+		public void mouseClicked(MouseEvent e) { forward(e); }
+		@Override
+		public void mousePressed(MouseEvent e) { forward(e); }
+		@Override
+		public void mouseReleased(MouseEvent e) { forward(e); }
+		@Override
+		public void mouseEntered(MouseEvent e) { forward(e); }
+		@Override
+		public void mouseExited(MouseEvent e) { forward(e); }
+		@Override
+		public void mouseMoved(MouseEvent e) { forward(e); }
+		@Override
+		public void mouseDragged(MouseEvent e) { forward(e); }
+
+		private void forward(MouseEvent e) {
+			mInput.offer(e);
+		}
+	};
+
+	// Closing the window quits through quit(), so a recording is finished first
+	final WindowAdapter mCloseListener = new WindowAdapter() {
+		@Override
+		public void windowClosing(WindowEvent e) {
+			quit();
+		}
+	};
+
 	public void setWindowSize(final int width, final int height) {
+		// No window when headless
+		if(!hasWindow()) return;
+
 		SwingUtilities.invokeLater(new Runnable() {
 			@Override
 			public void run() {
@@ -117,6 +272,13 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 				Insets insets = mFrame.getInsets();
 				mWidth = width;
 				mHeight = height;
+				if(mCanvas != null) {
+					// Active window: size the canvas, full screen keeps the frame as is
+					mCanvas.setPreferredSize(new Dimension(width, height));
+					mCanvas.setSize(width, height);
+					if(!mFullScreen) mFrame.pack();
+					return;
+				}
 				mFrame.setSize(width + insets.left + insets.right, height + insets.top + insets.bottom);
 				mPanel.setSize(width, height);
 			}
@@ -139,17 +301,12 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 
 	// GameEngine Constructor
 	public GameEngine() {
-		// Create graphics transform stack
-		mTransforms = new Stack<AffineTransform>();
+		this(false);
+	}
 
-		// Create window
-		SwingUtilities.invokeLater(new Runnable() {
-			@Override
-			public void run() {
-				// Create the window	
-				setupWindow(500,500);
-			}
-		});
+	// GameEngine Constructor, optionally without any window
+	protected GameEngine(boolean headless) {
+		mHeadless = headless;
 	}
 
 	// Create Game Function
@@ -157,6 +314,10 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 		// Initialise Game
 		game.init();
 
+		// Create a default window, unless init() already made one
+		if(game.mFrame == null) game.setupWindow(500,500);
+		game.mAssets.mark("init");
+
 		// Start the Game
 		game.gameLoop(framerate);
 	}
@@ -166,6 +327,16 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 		createGame(game, 30);
 	}
 
+	// Create Game Function with a fixed simulation tick rate,
+	// rendering at framerate and simulating at tickRate
+	public static void createGame(GameEngine game, int framerate, int tickRate) {
+		// Switch to the fixed timestep loop
+		game.setFixedTimestep(tickRate);
+
+		// Call CreateGame
+		createGame(game, framerate);
+	}
+
 	// Game Timer
 	protected class GameTimer extends Timer {
 		private static final long serialVersionUID = 1L;
@@ -180,67 +351,927 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 			if (framerate < 1) framerate = 1;
 			this.framerate = framerate;
 
-			int delay = 1000 / framerate;
-			setInitialDelay(0);
-			setDelay(delay);
+			int delay = 1000 / framerate;
+			setInitialDelay(0);
+			setDelay(delay);
+		}
+		
+		protected int getFramerate() {
+			return framerate;
+		}
+	}
+	
+	// Main Loop of the game. Runs continuously
+	// and calls all the updates of the game and
+	// tells the game to display a new frame.
+	GameTimer timer = new GameTimer(30, new ActionListener() {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			// Update the Game, unless the simulation thread does
+			if(!mSimulating) stepFrame();
+
+			// Tell the Game to draw, or repaint just what changed
+			if(mDirtyRendering) {
+				presentDamage();
+			} else {
+				mPanel.repaint();
+			}
+		}
+	});
+
+	// Advances the game by the time passed since the previous frame,
+	// returning the number of ticks run
+	int stepFrame() {
+		// Only time the update when the performance overlay needs it
+		boolean timing = mHud.isTiming();
+		long start = timing ? System.nanoTime() : 0;
+		int ticks = 1;
+
+		if(mLoopMode == LoopMode.FixedStep) {
+			// Run however many fixed ticks have elapsed
+			ticks = stepFixed();
+		} else {
+			// Determine the time step
+			double passedTime = measureTime();
+			double dt = passedTime / 1000.;
+
+			// Update the Game
+			tick(dt);
+		}
+
+		if(timing) {
+			mHud.recordUpdate(System.nanoTime() - start, ticks);
+		}
+		return ticks;
+	}
+
+	// The GameEngine main Panel
+	protected class GamePanel extends JPanel {
+		private static final long serialVersionUID = 1L;
+
+		// This gets called any time the Operating System
+		// tells the program to paint itself
+		public void paintComponent(Graphics graphics) {
+			paintFrame((Graphics2D)graphics);
+		}
+	}
+
+	// Paints one frame of the game into graphics
+	void paintFrame(Graphics2D graphics) {
+		// Get the graphics object
+		mGraphics = graphics;
+
+		// Reset all transforms
+		if(graphics != mBaseGraphics) {
+			mBase.setTransform(graphics.getTransform());
+			mBaseGraphics = graphics;
+		}
+		mTransform.setToIdentity();
+		mSavedCount = 0;
+
+		// Sprites follow the frame to whatever display it is on
+		mSprites.setConfiguration(graphics.getDeviceConfiguration());
+
+		// Rendering settings
+		mGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+		// Paint the game
+		if (initialised) {
+			if(!mPaintedFirstFrame) {
+				mPaintedFirstFrame = true;
+				mAssets.mark("first frame");
+			}
+
+			// Repaints of a prepared frame draw that frame again
+			double alpha = mPrepared ? mFrameAlpha : nextFrame();
+
+			if(mHud.isTiming()) {
+				long start = System.nanoTime();
+				GameEngine.this.paintComponent(alpha);
+				if(mPainting > 0) {
+					// One piece of a frame; presentDamage() records the whole
+					mPainting += System.nanoTime() - start;
+				} else {
+					mHud.recordFrame(start, System.nanoTime() - start);
+				}
+			} else {
+				GameEngine.this.paintComponent(alpha);
+			}
+
+			// Draw the overlay in window coordinates
+			if(mHud.isVisible()) {
+				applyTransform(IDENTITY);
+				mHud.draw(this, getActiveAudioCount(), mInput, mPresentedFrames, mDroppedFrames);
+			}
+		}
+
+		// Leave the graphics as it came, so a reused graphics keeps its base transform
+		applyTransform(IDENTITY);
+	}
+
+	// Moves on to the newest state and returns the interpolation alpha to draw it with
+	double nextFrame() {
+		return mSnapshots != null ? takeSnapshot() : mAlpha;
+	}
+
+	//-------------------------------------------------------
+	// Dirty rectangles
+	//-------------------------------------------------------
+	// A game that reports what changed since the last frame (collectDamage)
+	// is presented in pieces: each damaged rectangle is painted with the
+	// frame clipped to it, and the rest of the screen keeps the last frame.
+	// A frame painted straight through paintFrame() is always whole.
+
+	static final int MAX_DAMAGE = 8;
+
+	boolean mDirtyRendering = false;
+
+	// Damage of the frame being presented, in window coordinates
+	final Rectangle[] mDamage = new Rectangle[MAX_DAMAGE];
+	int mDamageCount = 0;
+	boolean mDamageAll = true;
+
+	// Set once the presenter prepares frames: paints draw the prepared frame
+	boolean mPrepared = false;
+	double mFrameAlpha = 1.0;
+
+	// Whether the last frame had the overlay on it
+	boolean mHudShown = false;
+
+	// Paint time of the pieces of the frame being presented, plus one, while timing
+	long mPainting = 0;
+
+	{
+		for(int i = 0; i < MAX_DAMAGE; i++) mDamage[i] = new Rectangle();
+	}
+
+	// Selects presenting only what collectDamage() reports as changed
+	public void setDirtyRendering(boolean dirty) {
+		mDirtyRendering = dirty;
+	}
+
+	public boolean isDirtyRendering() {
+		return mDirtyRendering;
+	}
+
+	// Override to report, with damage() and damageAll(), everything that looks
+	// different from the last frame presented. Runs on the painting thread
+	// with the newest snapshot acquired, before the frame is painted.
+	public void collectDamage(double alpha) {
+		damageAll();
+	}
+
+	// Marks the whole window to be repainted this frame
+	public void damageAll() {
+		mDamageAll = true;
+	}
+
+	// Marks a rectangle to be repainted this frame. Overlapping rectangles
+	// are merged, so no pixel is painted twice.
+	public void damage(double x, double y, double w, double h) {
+		if(mDamageAll || w <= 0 || h <= 0) return;
+
+		// Whole pixels covering the rectangle
+		int x0 = (int)Math.floor(x);
+		int y0 = (int)Math.floor(y);
+		int x1 = (int)Math.ceil(x + w);
+		int y1 = (int)Math.ceil(y + h);
+
+		// Swallow every rectangle it touches, then take the next free slot
+		int i = 0;
+		while(i < mDamageCount) {
+			Rectangle r = mDamage[i];
+			if(r.x < x1 && x0 < r.x + r.width && r.y < y1 && y0 < r.y + r.height) {
+				x0 = Math.min(x0, r.x);
+				y0 = Math.min(y0, r.y);
+				x1 = Math.max(x1, r.x + r.width);
+				y1 = Math.max(y1, r.y + r.height);
+				// Move the last one into its place and look at the rest again
+				Rectangle last = mDamage[--mDamageCount];
+				mDamage[mDamageCount] = r;
+				mDamage[i] = last;
+				i = 0;
+			} else {
+				i++;
+			}
+		}
+		if(mDamageCount == MAX_DAMAGE) {
+			// Too many pieces to be worth it
+			mDamageAll = true;
+			return;
+		}
+		mDamage[mDamageCount++].setBounds(x0, y0, x1 - x0, y1 - y0);
+	}
+
+	// Acquires the newest frame and collects its damage
+	void prepareFrame() {
+		mFrameAlpha = initialised ? nextFrame() : mAlpha;
+		mPrepared = true;
+
+		mDamageCount = 0;
+		mDamageAll = !initialised;
+		if(initialised) collectDamage(mFrameAlpha);
+
+		// The overlay is drawn over the frame, and has to be painted over when it goes
+		if(mHud.isVisible() || mHudShown) mDamageAll = true;
+		mHudShown = mHud.isVisible();
+	}
+
+	// Swing presenter: repaints the damaged rectangles right away, each with
+	// its own clip, rather than leaving Swing to merge them into one
+	void presentDamage() {
+		prepareFrame();
+		if(mDamageAll) {
+			mPanel.repaint();
+			return;
+		}
+
+		long start = System.nanoTime();
+		mPainting = 1;
+		for(int i = 0; i < mDamageCount; i++) {
+			Rectangle r = mDamage[i];
+			mPanel.paintImmediately(r.x, r.y, r.width, r.height);
+		}
+		recordPieces(start);
+	}
+
+	// Prepares the next frame and paints what changed into graphics, which
+	// must still hold the frame before it
+	void paintDamage(Graphics2D graphics) {
+		prepareFrame();
+		if(mDamageAll) {
+			paintFrame(graphics);
+			return;
+		}
+
+		long start = System.nanoTime();
+		mPainting = 1;
+		for(int i = 0; i < mDamageCount; i++) {
+			graphics.setClip(mDamage[i]);
+			paintFrame(graphics);
+		}
+		graphics.setClip(null);
+		recordPieces(start);
+	}
+
+	// Records the pieces painted since start as one frame
+	private void recordPieces(long start) {
+		if(mPainting > 1) mHud.recordFrame(start, mPainting - 1);
+		mPainting = 0;
+	}
+
+	//-------------------------------------------------------
+	// Performance overlay
+	//-------------------------------------------------------
+	// Toggled at runtime with F3 (F4 hit boxes, F5 CSV dump)
+	final PerfHud mHud = new PerfHud();
+
+	public PerfHud perfHud() {
+		return mHud;
+	}
+
+	//-------------------------------------------------------
+	// Active rendering
+	//-------------------------------------------------------
+	// Instead of asking Swing to repaint, a render thread draws straight
+	// into a page-flipped BufferStrategy and presents at a fixed cadence
+
+	boolean mActiveRendering = false;
+	boolean mFullScreen = false;
+	Canvas mCanvas;
+	BufferStrategy mStrategy;
+	Thread mRenderThread;
+	volatile boolean mRendering = false;
+
+	// Held while the game updates, so quit() and stopRecording() land between ticks
+	final Object mGameLock = new Object();
+
+	// Frames presented, and presentation slots missed because a frame was late
+	volatile long mPresentedFrames = 0;
+	volatile long mDroppedFrames = 0;
+
+	// Selects active rendering, optionally in full-screen exclusive mode.
+	// Must be called before the window is set up.
+	public void setActiveRendering(boolean fullScreen) {
+		mActiveRendering = true;
+		mFullScreen = fullScreen;
+	}
+
+	public boolean isActiveRendering() {
+		return mActiveRendering;
+	}
+
+	// Returns the number of frames presented by the active renderer
+	public long getPresentedFrames() {
+		return mPresentedFrames;
+	}
+
+	// Returns the number of presentation slots the active renderer missed
+	public long getDroppedFrames() {
+		return mDroppedFrames;
+	}
+
+	// Creates a window holding a Canvas with a two page BufferStrategy
+	void setupActiveWindow(int width, int height) {
+		// Replace any window from an earlier call
+		if(mFrame != null) {
+			mFrame.dispose();
+		}
+
+		mFrame = new JFrame();
+		mCanvas = new Canvas();
+
+		mWidth = width;
+		mHeight = height;
+
+		mFrame.setTitle("Stickman Badminton");
+		mFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		mFrame.setIgnoreRepaint(true);
+		mCanvas.setIgnoreRepaint(true);
+		mCanvas.setPreferredSize(new Dimension(width, height));
+		mCanvas.setBackground(Color.BLACK);
+
+		// Forward mouse input under the game lock
+		mCanvas.addMouseListener(mMouseForwarder);
+		mCanvas.addMouseMotionListener(mMouseForwarder);
+		mFrame.addWindowListener(mCloseListener);
+
+		GraphicsDevice device = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
+		if(mFullScreen && device.isFullScreenSupported()) {
+			// Full-screen exclusive: the canvas sits centred on a black screen
+			mFrame.setUndecorated(true);
+			mFrame.getContentPane().setBackground(Color.BLACK);
+			mFrame.getContentPane().setLayout(new GridBagLayout());
+			mFrame.getContentPane().add(mCanvas);
+			device.setFullScreenWindow(mFrame);
+			mFrame.validate();
+		} else {
+			// Windowed fallback
+			mFullScreen = false;
+			mFrame.add(mCanvas);
+			mFrame.pack();
+			mFrame.setResizable(false);
+			mFrame.setLocation(200,200);
+			mFrame.setVisible(true);
+		}
+
+		// Page flipping needs a displayable canvas
+		mCanvas.createBufferStrategy(2);
+		mStrategy = mCanvas.getBufferStrategy();
+
+		registerKeyDispatcher();
+	}
+
+	// Simulates, renders and presents one frame per period until stopped
+	void activeLoop(int framerate) {
+		long period = 1000000000L / Math.max(1, framerate);
+		long deadline = System.nanoTime() + period;
+
+		while(mRendering) {
+			if(mSimulating) {
+				// Draw the latest snapshot while the simulation thread carries on
+				renderActiveFrame();
+			} else {
+				synchronized(mGameLock) {
+					// Update the Game
+					stepFrame();
+
+					// Draw and flip
+					renderActiveFrame();
+				}
+			}
+			mPresentedFrames++;
+
+			long now = System.nanoTime();
+			if(now > deadline) {
+				// Late: count the presentation slots that passed without a new frame
+				long missed = (now - deadline) / period + 1;
+				mDroppedFrames += missed;
+				deadline += missed * period;
+			}
+
+			// Wait for the next slot
+			LockSupport.parkNanos(deadline - System.nanoTime());
+			deadline += period;
+		}
+	}
+
+	// Draws into the back buffer and shows it, redrawing if the buffer was lost
+	void renderActiveFrame() {
+		if(mStrategy == null) return;
+
+		// Only what changed, when the back buffer still holds the last frame:
+		// a blit strategy, or flipping that copies the shown page back
+		BufferCapabilities caps = mStrategy.getCapabilities();
+		boolean retained = !caps.isPageFlipping() || caps.getFlipContents() == BufferCapabilities.FlipContents.COPIED;
+		boolean pieces = mDirtyRendering && retained;
+
+		do {
+			do {
+				Graphics2D graphics = (Graphics2D)mStrategy.getDrawGraphics();
+				try {
+					if(pieces) {
+						paintDamage(graphics);
+						// A restored buffer lost the last frame too
+						pieces = false;
+					} else {
+						paintFrame(graphics);
+					}
+				} finally {
+					graphics.dispose();
+				}
+			} while(mStrategy.contentsRestored());
+
+			mStrategy.show();
+		} while(mStrategy.contentsLost());
+
+		// Flush the pipeline so the flip is not queued behind later frames
+		Toolkit.getDefaultToolkit().sync();
+	}
+
+	//-------------------------------------------------------
+	// Simulation thread
+	//-------------------------------------------------------
+	// A game that hands its render state over in snapshots (setSnapshots)
+	// is updated on its own thread. Painting draws the newest snapshot and
+	// never touches the live game, so a slow paint or a window drag does not
+	// hold up the simulation, and neither waits for the other.
+
+	TripleBuffer<?> mSnapshots;
+	Thread mSimThread;
+	volatile boolean mSimulating = false;
+
+	// Sets the buffer snapshot() fills; call from the constructor or init()
+	protected void setSnapshots(TripleBuffer<?> snapshots) {
+		mSnapshots = snapshots;
+	}
+
+	// Override to copy everything paintComponent() draws into the back slot
+	// of the snapshot buffer. Runs on the simulation thread after its ticks.
+	public void snapshot() {}
+
+	// Returns true if update() runs on the simulation thread
+	public boolean isSimulationThreaded() {
+		return mSimulating;
+	}
+
+	// Returns the thread update() runs on when it has its own, otherwise null
+	public Thread getSimulationThread() {
+		return mSimulating ? mSimThread : null;
+	}
+
+	// Starts updating the game on its own thread at the tick rate
+	// (or framerate, with a variable timestep)
+	void startSimulation(int framerate) {
+		final long period = 1000000000L / Math.max(1, framerate);
+		mSimulating = true;
+		mSimThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				simulationLoop(period);
+			}
+		}, "GameEngine-Simulation");
+		mSimThread.setDaemon(true);
+		mSimThread.start();
+	}
+
+	// Runs the ticks that are due, publishes a snapshot and sleeps until
+	// the next tick is due
+	void simulationLoop(long period) {
+		while(mSimulating) {
+			synchronized(mGameLock) {
+				if(stepFrame() > 0) {
+					snapshot();
+					// Time of the state just simulated, for interpolating from it
+					long stamp = mLoopMode == LoopMode.FixedStep ? mLastNanos - mAccumulator : System.nanoTime();
+					mSnapshots.publish(stamp);
+				}
+			}
+
+			long wait = mLoopMode == LoopMode.FixedStep ? mTickNanos - mAccumulator : period;
+			LockSupport.parkNanos(Math.max(0, wait));
+		}
+	}
+
+	// Moves the newest snapshot to the front for painting and returns the
+	// interpolation alpha to draw it with
+	double takeSnapshot() {
+		if(!mSimulating) {
+			// Painting on the thread that updates (offscreen, benchmarks):
+			// snapshot the current state first
+			snapshot();
+			mSnapshots.publish(0);
+			mSnapshots.acquire();
+			return mAlpha;
+		}
+
+		mSnapshots.acquire();
+		if(mLoopMode != LoopMode.FixedStep) return 1.0;
+
+		// How far real time has moved on since the snapshot's tick
+		double alpha = (double)(System.nanoTime() - mSnapshots.frontStamp()) / mTickNanos;
+		return Math.max(0, Math.min(1, alpha));
+	}
+
+	//-------------------------------------------------------
+	// Fixed timestep simulation
+	//-------------------------------------------------------
+	// Variable feeds update() the measured frame time, FixedStep
+	// runs update() at a constant rate and interpolates rendering
+	public enum LoopMode { Variable, FixedStep }
+
+	LoopMode mLoopMode = LoopMode.Variable;
+
+	// Length of one simulation tick
+	long mTickNanos = 1000000000L / 120;
+	double mTickDt = 1.0 / 120;
+
+	// Most ticks run per frame before the backlog is dropped,
+	// so a long stall cannot snowball into ever longer frames
+	int mMaxCatchUpTicks = 8;
+
+	// Unsimulated time left over from the previous frame
+	long mAccumulator = 0;
+	long mLastNanos = 0;
+
+	// Fraction of a tick between the last simulated state and now
+	double mAlpha = 1.0;
+
+	// Switches the loop to fixed timestep at tickRate ticks per second
+	public void setFixedTimestep(int tickRate) {
+		if(tickRate < 1) tickRate = 1;
+
+		mLoopMode = LoopMode.FixedStep;
+		mTickNanos = 1000000000L / tickRate;
+		mTickDt = mTickNanos / 1e9;
+		mAccumulator = 0;
+		mLastNanos = 0;
+	}
+
+	// Switches the loop back to variable timestep
+	public void setVariableTimestep() {
+		mLoopMode = LoopMode.Variable;
+		mAlpha = 1.0;
+		oldTime = 0;
+	}
+
+	// Sets the most ticks run per frame when catching up
+	public void setMaxCatchUpTicks(int ticks) {
+		mMaxCatchUpTicks = Math.max(1, ticks);
+	}
+
+	public LoopMode getLoopMode() {
+		return mLoopMode;
+	}
+
+	// Returns the duration of one fixed tick in seconds
+	public double getTickDt() {
+		return mTickDt;
+	}
+
+	// Returns how far (0..1) rendering is between the previous and current tick
+	public double getInterpolationAlpha() {
+		return mAlpha;
+	}
+
+	// Accumulates elapsed real time and runs the fixed ticks it covers,
+	// returning how many ran
+	int stepFixed() {
+		long now = System.nanoTime();
+		if(mLastNanos == 0) {
+			mLastNanos = now;
+		}
+		mAccumulator += now - mLastNanos;
+		mLastNanos = now;
+
+		int ticks = 0;
+		while(mAccumulator >= mTickNanos) {
+			if(ticks == mMaxCatchUpTicks) {
+				// Too far behind, drop the backlog but keep the partial tick
+				mAccumulator %= mTickNanos;
+				break;
+			}
+
+			// Update the Game
+			tick(mTickDt);
+
+			mAccumulator -= mTickNanos;
+			ticks++;
+		}
+
+		mAlpha = (double)mAccumulator / mTickNanos;
+		return ticks;
+	}
+
+	// Initialises and starts the game loop with the given framerate.
+	public void gameLoop(int framerate) {
+		initialised = true; // assume init has been called or won't be called
+
+		// Games that hand snapshots to the renderer simulate on their own thread
+		if(mSnapshots != null) {
+			startSimulation(framerate);
+		}
+
+		if(mActiveRendering) {
+			// The render thread drives the game instead of the Swing timer
+			final int rate = framerate;
+			mRendering = true;
+			mRenderThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					activeLoop(rate);
+				}
+			}, "GameEngine-Render");
+			mRenderThread.setDaemon(true);
+			mRenderThread.start();
+			return;
+		}
+
+		timer.setFramerate(framerate);
+		timer.setRepeats(true);
+
+		// Main loop runs until program is closed
+		timer.start();
+	}
+
+	//-------------------------------------------------------
+	// Headless simulation
+	//-------------------------------------------------------
+
+	// Returns true if this engine runs without a window
+	public boolean isHeadless() {
+		return mHeadless;
+	}
+
+	// Returns true if this engine can open a window. An engine that is not
+	// headless still loads its images in a headless JVM (java.awt.headless),
+	// so it can paint offscreen through paintFrame()
+	public boolean hasWindow() {
+		return !mHeadless && !GraphicsEnvironment.isHeadless();
+	}
+
+	// Runs update() back to back with the fixed tick length until maxTicks
+	// have run or headlessDone() returns true. Returns the ticks run.
+	public long runHeadless(long maxTicks) {
+		initialised = true;
+
+		long ticks = 0;
+		while(ticks < maxTicks && !headlessDone() && !mQuit) {
+			tick(mTickDt);
+			ticks++;
+		}
+		return ticks;
+	}
+
+	// Override to stop runHeadless() early, e.g. when a match is over
+	public boolean headlessDone() {
+		return false;
+	}
+
+	//-------------------------------------------------------
+	// Ticks, recording and replay
+	//-------------------------------------------------------
+
+	// Ticks simulated so far; input is logged against this count
+	long mTickCount = 0;
+
+	// Attached input log, if recording
+	InputRecorder mRecorder = null;
+
+	// Set by quit() when there is no process to exit
+	boolean mQuit = false;
+
+	// Runs one simulation step, after the input that arrived since the last one
+	void tick(double dt) {
+		drainInput();
+		if(mRecorder != null) {
+			mRecorder.tick(mTickCount, dt);
+		}
+
+		// Update the Game, then whatever else is due in the tick
+		simulate(dt);
+		mTickCount++;
+	}
+
+	// Returns the number of ticks simulated so far
+	public long getTickCount() {
+		return mTickCount;
+	}
+
+	// Override to fingerprint the simulation state, so a replay can
+	// be checked against the recording
+	public long stateHash() {
+		return 0;
+	}
+
+	// Override to return the settings that change how the game plays (an
+	// AI's, say), written into a recording when it starts
+	protected long[] recordedSettings() {
+		return new long[0];
+	}
+
+	// Override to put back the settings recordedSettings() returned, before
+	// a recording is replayed
+	protected void applySettings(long[] settings) {
+	}
+
+	// Starts logging seed, settings, tick lengths and input to filename.
+	// Call before the game starts, and after changing its settings, so the
+	// replay begins from the same state.
+	public void startRecording(String filename) {
+		// A fresh seed the log can reproduce
+		setSeed(System.nanoTime());
+		mTickCount = 0;
+		try {
+			mRecorder = new InputRecorder(filename, mSeed, recordedSettings());
+		} catch(IOException e) {
+			System.out.println("Error: could not record input to " + filename);
+			return;
+		}
+
+		// Still write a (hashless) end record if the process is killed
+		final InputRecorder recorder = mRecorder;
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				recorder.finish(mTickCount, false, 0);
+			}
+		}));
+	}
+
+	// Finishes the input log with the current state hash
+	public void stopRecording() {
+		if(mRecorder == null) return;
+
+		synchronized(mGameLock) {
+			mRecorder.finish(mTickCount, true, stateHash());
+			System.out.println("Recorded " + mTickCount + " ticks to " + mRecorder.getFilename());
+			mRecorder = null;
+		}
+	}
+
+	// Quits the game, finishing any recording. Headless engines just stop.
+	public void quit() {
+		synchronized(mGameLock) {
+			stopRecording();
+			if(!hasWindow()) {
+				mQuit = true;
+				return;
+			}
+			System.exit(0);
+		}
+	}
+
+	// Replays an input log against this freshly initialised game as fast as
+	// possible. Returns true if the final state matches the recording.
+	public boolean replay(String filename) {
+		InputReplay replay = InputReplay.load(filename);
+		if(replay == null) return false;
+
+		initialised = true;
+		applySettings(replay.getSettings());
+		setSeed(replay.getSeed());
+		mTickCount = 0;
+
+		long start = System.nanoTime();
+		while(mTickCount < replay.getEndTick()) {
+			replay.dispatch(this, mTickCount);
+			simulate(replay.getTickLength());
+			mTickCount++;
 		}
-		
-		protected int getFramerate() {
-			return framerate;
+		// Input that arrived after the last tick, e.g. the key that quit
+		replay.dispatch(this, mTickCount);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("Replayed %d ticks and %d records in %.3f s (%.0f ticks/s)%n",
+				mTickCount, replay.getEventCount(), seconds, mTickCount / Math.max(seconds, 1e-9));
+		if(!replay.isHashKnown()) {
+			System.out.println("Recording has no final state to compare against");
+			return true;
 		}
+		boolean match = stateHash() == replay.getStateHash();
+		System.out.println(match ? "Final state matches the recording" : "Error: final state differs from the recording");
+		return match;
 	}
-	
-	// Main Loop of the game. Runs continuously
-	// and calls all the updates of the game and
-	// tells the game to display a new frame.
-	GameTimer timer = new GameTimer(30, new ActionListener() {
-		@Override
-		public void actionPerformed(ActionEvent e) {
-			// Determine the time step
-			double passedTime = measureTime();
-			double dt = passedTime / 1000.;
 
-			// Update the Game
-			update(dt);
+	//-------------------------------------------------------
+	// Subsystems
+	//-------------------------------------------------------
+	// Work that need not run every tick is added as a subsystem with its own
+	// rate. Subsystems are scheduled on simulated time, in whole nanoseconds,
+	// so a replay runs them on exactly the ticks the recording did. A
+	// subsystem runs once for every period of its rate that ends in a tick:
+	// every sixth tick at 20 Hz and a 120 Hz tick, twice a tick at 240 Hz.
+	// Subsystems with a task run after update(), in the order they were
+	// added; one without a task only keeps time, and update() does the work
+	// itself, at its place in the tick, when isDue().
+
+	public interface SubsystemTask {
+		// dt is the subsystem's own period, in seconds
+		void run(double dt);
+	}
+
+	public static final class Subsystem {
+		final String mName;
+		final SubsystemTask mTask;
+		int mRate;
+		long mPeriod;
+		// Simulated time since the last run, and the runs due in this tick
+		long mElapsed = 0;
+		int mDue = 0;
+		long mRuns = 0;
+		// Time spent in the task while the overlay is timing
+		long mNanos = 0;
+
+		Subsystem(String name, int rate, SubsystemTask task) {
+			mName = name;
+			mTask = task;
+			setRate(rate);
+		}
 
-			// Tell the Game to draw
-			mPanel.repaint();
+		// Changes the rate; the next run is a whole new period away
+		public void setRate(int rate) {
+			mRate = Math.max(1, rate);
+			mPeriod = 1000000000L / mRate;
+			mElapsed = 0;
 		}
-	});
 
-	// The GameEngine main Panel
-	protected class GamePanel extends JPanel {
-		private static final long serialVersionUID = 1L;
+		public int getRate() {
+			return mRate;
+		}
 
-		// This gets called any time the Operating System
-		// tells the program to paint itself
-		public void paintComponent(Graphics graphics) {
-			// Get the graphics object
-			mGraphics = (Graphics2D)graphics;
+		// Length of one period in seconds, as passed to the task
+		public double getDt() {
+			return mPeriod / 1e9;
+		}
+
+		// Whether the subsystem runs in the current tick
+		public boolean isDue() {
+			return mDue > 0;
+		}
 
-			// Reset all transforms
-			mTransforms.clear();
-			mTransforms.push(mGraphics.getTransform());
+		// Number of times it runs in the current tick
+		public int getDueCount() {
+			return mDue;
+		}
 
-			// Rendering settings
-			mGraphics.setRenderingHints(new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON));
+		public String getName() {
+			return mName;
+		}
 
-			// Paint the game
-			if (initialised) {
-				GameEngine.this.paintComponent();
-			}
+		// Whether the engine runs it, rather than update()
+		public boolean hasTask() {
+			return mTask != null;
+		}
+
+		public long getRuns() {
+			return mRuns;
+		}
+
+		public long getNanos() {
+			return mNanos;
 		}
 	}
 
-	// Initialises and starts the game loop with the given framerate.
-	public void gameLoop(int framerate) {
-		initialised = true; // assume init has been called or won't be called
+	Subsystem[] mSubsystems = new Subsystem[0];
 
-		timer.setFramerate(framerate);
-		timer.setRepeats(true);
+	// Adds a subsystem run rate times a second of simulated time; task may be
+	// null when update() does the work itself
+	public Subsystem addSubsystem(String name, int rate, SubsystemTask task) {
+		Subsystem subsystem = new Subsystem(name, rate, task);
+		mSubsystems = Arrays.copyOf(mSubsystems, mSubsystems.length + 1);
+		mSubsystems[mSubsystems.length - 1] = subsystem;
+		return subsystem;
+	}
 
-		// Main loop runs until program is closed
-		timer.start();
+	// Returns the subsystems in the order they run
+	public Subsystem[] getSubsystems() {
+		return mSubsystems;
+	}
+
+	// Simulates one tick of dt: update() and the subsystems due in it
+	void simulate(double dt) {
+		// Which subsystems are due, so update() can ask
+		long nanos = Math.round(dt * 1e9);
+		for(Subsystem s : mSubsystems) {
+			s.mElapsed += nanos;
+			s.mDue = (int)(s.mElapsed / s.mPeriod);
+			s.mElapsed -= s.mDue * s.mPeriod;
+			if(s.mTask == null) s.mRuns += s.mDue;
+		}
+
+		update(dt);
+
+		boolean timing = mHud.isTiming();
+		for(Subsystem s : mSubsystems) {
+			if(s.mTask == null) continue;
+			for(int i = 0; i < s.mDue; i++) {
+				long start = timing ? System.nanoTime() : 0;
+				s.mTask.run(s.getDt());
+				s.mRuns++;
+				if(timing) s.mNanos += System.nanoTime() - start;
+			}
+		}
 	}
 
 	//-------------------------------------------------------
@@ -258,6 +1289,12 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 	//-------------------------------------------------------
 	public abstract void paintComponent();
 
+	// Paint function with the interpolation alpha between the previous
+	// and current simulation tick (always 1 with a variable timestep)
+	public void paintComponent(double alpha) {
+		paintComponent();
+	}
+
 	//-------------------------------------------------------
 	// Keyboard functions
 	//-------------------------------------------------------
@@ -318,6 +1355,22 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 		mGraphics.setBackground(c);
 	}
 
+	// Colors made by changeColor(r,g,b), so steady frames reuse them instead of allocating
+	private final Color[] mColorCache = new Color[32];
+	private int mColorNext = 0;
+
+	// Finds or makes the color (red,green,blue), already clamped
+	Color cachedColor(int red, int green, int blue) {
+		int rgb = 0xFF000000 | (red << 16) | (green << 8) | blue;
+		for(Color c : mColorCache) {
+			if(c != null && c.getRGB() == rgb) return c;
+		}
+		Color c = new Color(red, green, blue);
+		mColorCache[mColorNext] = c;
+		mColorNext = (mColorNext + 1) % mColorCache.length;
+		return c;
+	}
+
 	// Changes the background Color to the color (red,green,blue)
 	public void changeBackgroundColor(int red, int green, int blue) {
 		// Clamp values
@@ -331,13 +1384,23 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 		if(blue > 255) {blue = 255;}
 
 		// Set background colour
-		mGraphics.setBackground(new Color(red,green,blue));
+		mGraphics.setBackground(cachedColor(red,green,blue));
 	}
 
 	// Clears the background, makes the whole window whatever the background color is
 	public void clearBackground(int width, int height) {
-		// Clear background
-		mGraphics.clearRect(0, 0, width, height);
+		// Clear background. clearRect swaps the composite, which makes Java2D rebuild its
+		// font info (an allocation) on the next drawString; filling with an opaque
+		// background color gives the same pixels without that
+		Color background = mGraphics.getBackground();
+		if(background.getAlpha() == 255) {
+			Color color = mGraphics.getColor();
+			mGraphics.setColor(background);
+			mGraphics.fillRect(0, 0, width, height);
+			mGraphics.setColor(color);
+		} else {
+			mGraphics.clearRect(0, 0, width, height);
+		}
 	}
 
 	// Changes the drawing Color to the color c
@@ -359,88 +1422,127 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 		if(blue > 255) {blue = 255;}
 
 		// Set colour
-		mGraphics.setColor(new Color(red,green,blue));
+		mGraphics.setColor(cachedColor(red,green,blue));
+	}
+
+	// Shapes and strokes reused by the draw functions below
+	private final Line2D.Double mLine = new Line2D.Double();
+	private final Rectangle2D.Double mRect = new Rectangle2D.Double();
+	private final Ellipse2D.Double mEllipse = new Ellipse2D.Double();
+	private final BasicStroke mDefaultStroke = new BasicStroke(1.0f);
+	private BasicStroke mStroke = mDefaultStroke;
+
+	// Sets a stroke of width l, reusing the last one if the width matches
+	private void setStroke(double l) {
+		if(mStroke.getLineWidth() != (float)l) {
+			mStroke = new BasicStroke((float)l);
+		}
+		mGraphics.setStroke(mStroke);
 	}
 
 	// Draws a line from (x1,y2) to (x2,y2)
 	void drawLine(double x1, double y1, double x2, double y2) {
 		// Draw a Line
-		mGraphics.draw(new Line2D.Double(x1, y1, x2, y2));
+		mLine.setLine(x1, y1, x2, y2);
+		mGraphics.draw(mLine);
 	}
 
 	// Draws a line from (x1,y2) to (x2,y2) with width l
 	void drawLine(double x1, double y1, double x2, double y2, double l) {
 		// Set the stroke
-		mGraphics.setStroke(new BasicStroke((float)l));
+		setStroke(l);
 
 		// Draw a Line
-		mGraphics.draw(new Line2D.Double(x1, y1, x2, y2));
+		mLine.setLine(x1, y1, x2, y2);
+		mGraphics.draw(mLine);
 
 		// Reset the stroke
-		mGraphics.setStroke(new BasicStroke(1.0f));
+		mGraphics.setStroke(mDefaultStroke);
 	}
 
 	// This function draws a rectangle at (x,y) with width and height (w,h)
 	void drawRectangle(double x, double y, double w, double h) {
 		// Draw a Rectangle
-		mGraphics.draw(new Rectangle2D.Double(x, y, w, h));
+		mRect.setRect(x, y, w, h);
+		mGraphics.draw(mRect);
 	}
 
 	// This function draws a rectangle at (x,y) with width and height (w,h)
 	// with a line of width l
 	void drawRectangle(double x, double y, double w, double h, double l) {
 		// Set the stroke
-		mGraphics.setStroke(new BasicStroke((float)l));
+		setStroke(l);
 
 		// Draw a Rectangle
-		mGraphics.draw(new Rectangle2D.Double(x, y, w, h));
+		mRect.setRect(x, y, w, h);
+		mGraphics.draw(mRect);
 
 		// Reset the stroke
-		mGraphics.setStroke(new BasicStroke(1.0f));
+		mGraphics.setStroke(mDefaultStroke);
 	}
 
 	// This function fills in a rectangle at (x,y) with width and height (w,h)
 	void drawSolidRectangle(double x, double y, double w, double h) {
 		// Fill a Rectangle
-		mGraphics.fill(new Rectangle2D.Double(x, y, w, h));
+		mRect.setRect(x, y, w, h);
+		mGraphics.fill(mRect);
 	}
 
 	// This function draws a circle at (x,y) with radius
 	void drawCircle(double x, double y, double radius) {
 		// Draw a Circle
-		mGraphics.draw(new Ellipse2D.Double(x-radius, y-radius, radius*2, radius*2));
+		mEllipse.setFrame(x-radius, y-radius, radius*2, radius*2);
+		mGraphics.draw(mEllipse);
 	}
 
 	// This function draws a circle at (x,y) with radius
 	// with a line of width l
 	void drawCircle(double x, double y, double radius, double l) {
 		// Set the stroke
-		mGraphics.setStroke(new BasicStroke((float)l));
+		setStroke(l);
 
 		// Draw a Circle
-		mGraphics.draw(new Ellipse2D.Double(x-radius, y-radius, radius*2, radius*2));
+		mEllipse.setFrame(x-radius, y-radius, radius*2, radius*2);
+		mGraphics.draw(mEllipse);
 
 		// Reset the stroke
-		mGraphics.setStroke(new BasicStroke(1.0f));
+		mGraphics.setStroke(mDefaultStroke);
 	}
 
 	// This function draws a circle at (x,y) with radius
 	void drawSolidCircle(double x, double y, double radius) {
 		// Fill a Circle
-		mGraphics.fill(new Ellipse2D.Double(x-radius, y-radius, radius*2, radius*2));
+		mEllipse.setFrame(x-radius, y-radius, radius*2, radius*2);
+		mGraphics.fill(mEllipse);
+	}
+
+	// Fonts used so far, so drawText does not make a new Font every frame
+	private Font[] mFonts = new Font[8];
+	private int mFontCount = 0;
+
+	// Finds or makes the font (name,style,size)
+	Font cachedFont(String name, int style, int size) {
+		for(int i = 0; i < mFontCount; i++) {
+			Font f = mFonts[i];
+			if(f.getSize() == size && f.getStyle() == style && f.getName().equals(name)) return f;
+		}
+		Font f = new Font(name, style, size);
+		if(mFontCount == mFonts.length) mFonts = java.util.Arrays.copyOf(mFonts, mFontCount * 2);
+		mFonts[mFontCount++] = f;
+		return f;
 	}
 
 	// This function draws text on the screen at (x,y)
 	public void drawText(double x, double y, String s) {
 		// Draw text on the screen
-		mGraphics.setFont(new Font("Arial", Font.PLAIN, 40));
+		mGraphics.setFont(cachedFont("Arial", Font.PLAIN, 40));
 		mGraphics.drawString(s, (int)x, (int)y);
 	}
 
 	// This function draws bold text on the screen at (x,y)
 	public void drawBoldText(double x, double y, String s) {
 		// Draw text on the screen
-		mGraphics.setFont(new Font("Arial", Font.BOLD, 40));
+		mGraphics.setFont(cachedFont("Arial", Font.BOLD, 40));
 		mGraphics.drawString(s, (int)x, (int)y);
 	}
 
@@ -448,7 +1550,7 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 	// with Font (font,size)
 	public void drawText(double x, double y, String s, String font, int size) {
 		// Draw text on the screen
-		mGraphics.setFont(new Font(font, Font.PLAIN, size));
+		mGraphics.setFont(cachedFont(font, Font.PLAIN, size));
 		mGraphics.drawString(s, (int)x, (int)y);
 	}
 
@@ -456,22 +1558,146 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 	// with Font (font,size)
 	public void drawBoldText(double x, double y, String s, String font, int size) {
 		// Draw text on the screen
-		mGraphics.setFont(new Font(font, Font.BOLD, size));
+		mGraphics.setFont(cachedFont(font, Font.BOLD, size));
 		mGraphics.drawString(s, (int)x, (int)y);
 	}
 
+	// Glyphs drawn by drawCachedText, rasterised once per (font, color)
+	final TextCache mTextCache = new TextCache(32);
+
+	// This function draws text that rarely changes (scores, menus) on the screen at (x,y)
+	// with Font (font,size), as image blits of glyphs rendered the first time they appear.
+	// s may be a StringBuilder that is refilled only when the text changes.
+	public void drawCachedText(double x, double y, CharSequence s, String font, int size) {
+		// A scaled or rotated blit would blur the text and allocate, so draw it directly
+		if(((mBase.getType() | mTransform.getType()) & ~AffineTransform.TYPE_TRANSLATION) != 0) {
+			drawText(x, y, s.toString(), font, size);
+			return;
+		}
+
+		// Draw text on the screen
+		mTextCache.draw(mGraphics, s, cachedFont(font, Font.PLAIN, size), mGraphics.getColor(), (int)x, (int)y);
+	}
+
+	// Reused by damageCachedText
+	private final Rectangle mTextBounds = new Rectangle();
+
+	// Marks what drawCachedText(x, y, s, font, size) draws to be repainted this frame
+	public void damageCachedText(double x, double y, CharSequence s, String font, int size) {
+		mTextCache.bounds(s, cachedFont(font, Font.PLAIN, size), (int)x, (int)y, mTextBounds);
+		damage(mTextBounds.x, mTextBounds.y, mTextBounds.width, mTextBounds.height);
+	}
+
+	//-------------------------------------------------------
+	// Asset loading
+	//-------------------------------------------------------
+	// Images and audio decode in parallel on a small pool, so a game can show its first
+	// screen as soon as that screen's assets are in and let the rest load behind it
+	final AssetLoader mAssets = new AssetLoader();
+	volatile boolean mPaintedFirstFrame = false;
+
+	// Loaded assets are shared by name and counted, so ones no longer used can be evicted
+	final AssetManager mAssetManager = new AssetManager(mAssets, new AssetManager.Meter() {
+		@Override
+		public long heapBytes(Object asset) {
+			if(asset instanceof Image) return mSprites.heapBytes((Image)asset);
+			if(asset instanceof AudioClip) {
+				AudioClip clip = (AudioClip)asset;
+				byte[] data = clip.getData();
+				short[] samples = clip.getSamples();
+				return (data == null ? 0 : data.length) + (samples == null ? 0 : 2L * samples.length);
+			}
+			long total = 0;
+			if(asset instanceof Image[]) {
+				for(Image image : (Image[])asset) total += mSprites.heapBytes(image);
+			}
+			return total;
+		}
+
+		@Override
+		public long nativeBytes(Object asset) {
+			if(asset instanceof Image) return mSprites.nativeBytes((Image)asset);
+			// Clips are played from the heap by the mixer, which has one small line for all of them
+			long total = 0;
+			if(asset instanceof Image[]) {
+				for(Image image : (Image[])asset) total += mSprites.nativeBytes(image);
+			}
+			return total;
+		}
+	});
+
+	public AssetLoader assets() {
+		return mAssets;
+	}
+
+	public AssetManager assetManager() {
+		return mAssetManager;
+	}
+
+	// Starts loading the named asset with loader and takes a reference to it. If the
+	// name is already loading or loaded, that asset is shared instead. Headless engines
+	// load inline and keep nothing.
+	public <T> Future<T> loadAsync(String name, Callable<T> loader) {
+		if(mHeadless) {
+			FutureTask<T> task = new FutureTask<T>(loader);
+			task.run();
+			return task;
+		}
+		return mAssetManager.acquire(name, loader);
+	}
+
+	// Drops the reference taken by loadAsync, loadImageAsync or loadAudioAsync.
+	// The asset stays cached until the asset budget needs the room.
+	public void releaseAsset(String name) {
+		if(mHeadless) return;
+		mAssetManager.release(name);
+	}
+
+	// Sets how many bytes of images and audio may stay loaded, see AssetManager
+	public void setAssetBudget(long bytes) {
+		mAssetManager.setBudget(bytes);
+	}
+
+	// Starts loading an image, see loadImage
+	public Future<Image> loadImageAsync(final String filename) {
+		return loadAsync(filename, new Callable<Image>() {
+			@Override
+			public Image call() {
+				return loadImage(filename);
+			}
+		});
+	}
+
+	// Starts loading an AudioClip, see loadAudio
+	public Future<AudioClip> loadAudioAsync(final String filename) {
+		return loadAsync(filename, new Callable<AudioClip>() {
+			@Override
+			public AudioClip call() {
+				return loadAudio(filename);
+			}
+		});
+	}
+
 	//-------------------------------------------------------
 	// Image Functions
 	//-------------------------------------------------------
 
+	// Every image the engine makes is kept in the display's own layout and at each size it
+	// is drawn at, so drawing is an unscaled, accelerated blit
+	final SpriteCache mSprites = new SpriteCache();
+
 	// Loads an image from file
 	public Image loadImage(String filename) {
+		// Nothing is drawn when headless
+		if(mHeadless) return null;
+
 		try {
 			// Load Image
-			Image image = ImageIO.read(new File(filename));
+			BufferedImage loaded = ImageIO.read(new File(filename));
 
-			// Return Image
-			return image;
+			// Convert to the display's layout. PNGs load as 4BYTE_ABGR, which Java2D
+			// blits through a general loop that allocates a temporary image per draw
+			return mSprites.add(loaded);
 		} catch (IOException e) {
 			// Show Error Message
 			System.out.println("Error: could not load image " + filename);
@@ -484,6 +1710,9 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 
 	// Loads a sub-image out of an image
 	public Image subImage(Image source, int x, int y, int w, int h) {
+		// Nothing is drawn when headless
+		if(mHeadless) return null;
+
 		// Check if image is null
 		if(source == null) {
 			// Print Error message
@@ -496,13 +1725,53 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 		// Convert to a buffered image
 		BufferedImage buffered = (BufferedImage)source;
 
-		// Extract sub image
-		Image image = buffered.getSubimage(x, y, w, h);
+		// Extract sub image, as a copy so it does not keep the whole sheet alive
+		Image image = mSprites.add(buffered.getSubimage(x, y, w, h));
 
 		// Return image
 		return image;
 	}
 
+	// Makes a copy of an image scaled to (w,h). Scaled drawImage calls go through the
+	// transform pipeline, which allocates on every call; a copy drawn at its own size does not
+	public Image scaledImage(Image source, int w, int h) {
+		return rotatedImage(source, w, h, 0);
+	}
+
+	// Makes a copy of an image scaled to (w,h) and rotated by a degrees about its centre,
+	// on a canvas large enough to hold the rotated image
+	public Image rotatedImage(Image source, int w, int h, double a) {
+		// Nothing is drawn when headless
+		if(mHeadless) return null;
+
+		// Check if image is null
+		if(source == null) {
+			// Print Error message
+			System.out.println("Error: cannot scale or rotate a null image.\n");
+
+			// Return null
+			return null;
+		}
+
+		// Bounding box of the rotated image
+		double r = Math.toRadians(a);
+		double cos = Math.abs(Math.cos(r)), sin = Math.abs(Math.sin(r));
+		int cw = (int)Math.ceil(w * cos + h * sin);
+		int ch = (int)Math.ceil(w * sin + h * cos);
+
+		// Draw the source into the new image once, smoothly
+		BufferedImage image = new BufferedImage(cw, ch, BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.translate(cw / 2.0, ch / 2.0);
+		g.rotate(r);
+		g.drawImage(source, -w / 2, -h / 2, w, h, null);
+		g.dispose();
+
+		// Return image
+		return mSprites.add(image);
+	}
+
 	// Draws an image on the screen at position (x,y)
 	public void drawImage(Image image, double x, double y) {
 		// Check if image is null
@@ -513,7 +1782,7 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 		}
 
 		// Draw image on screen at (x,y)
-		mGraphics.drawImage(image, (int)x, (int)y, null);
+		mGraphics.drawImage(mSprites.resolve(image, image.getWidth(null), image.getHeight(null)), (int)x, (int)y, null);
 	}
 
 	// Draws an image on the screen at position (x,y)
@@ -524,92 +1793,270 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 			System.out.println("Error: cannot draw null image.\n");
 			return;
 		}
-		// Draw image on screen at (x,y) with size (w,h)
+		// Draw image on screen at (x,y) with size (w,h), from a copy already that size
+		if(w > 0 && h > 0) {
+			image = mSprites.resolve(image, (int)w, (int)h);
+		}
 		mGraphics.drawImage(image, (int)x, (int)y, (int)w, (int)h, null);
 	}
 
+	//-------------------------------------------------------
+	// Static layers
+	//-------------------------------------------------------
+	// Parts of a frame that rarely change (a background with its scoreboard,
+	// menu art, an end-of-match screen) are drawn once into a VolatileImage
+	// and blitted from then on, with the moving sprites drawn on top. A layer
+	// is drawn again only when invalidated, or when the image lost its
+	// contents or does not suit the display any more.
+
+	// Draws the contents of a layer with the usual drawing functions,
+	// from (0,0) in the layer's top left corner
+	public interface LayerPainter {
+		void paintLayer();
+	}
+
+	public static class Layer {
+		final int mLayerWidth, mLayerHeight;
+		final boolean mTranslucent;
+		final LayerPainter mPainter;
+		VolatileImage mImage;
+		Graphics2D mImageGraphics;        // kept, so painting the layer does not allocate
+		boolean mValid = false;
+		long mRenders = 0;
+
+		Layer(int width, int height, boolean translucent, LayerPainter painter) {
+			mLayerWidth = width;
+			mLayerHeight = height;
+			mTranslucent = translucent;
+			mPainter = painter;
+		}
+
+		// Has the layer painted again the next time it is drawn
+		public void invalidate() {
+			mValid = false;
+		}
+
+		// Frees the layer's image, for a layer that will not be drawn for a
+		// while; it is made and painted again the next time it is drawn
+		public void flush() {
+			if(mImage != null) {
+				mImageGraphics.dispose();
+				mImage.flush();
+				mImageGraphics = null;
+				mImage = null;
+			}
+			mValid = false;
+		}
+
+		// Returns the number of times the layer has been painted
+		public long getRenderCount() {
+			return mRenders;
+		}
+	}
+
+	// Makes a layer of (width,height), transparent where painter draws nothing
+	// if translucent. It is painted the first time it is drawn.
+	public Layer createLayer(int width, int height, boolean translucent, LayerPainter painter) {
+		return new Layer(width, height, translucent, painter);
+	}
+
+	// Draws layer with its top left corner at (x,y), painting it first if needed
+	public void drawLayer(Layer layer, double x, double y) {
+		GraphicsConfiguration config = mGraphics.getDeviceConfiguration();
+		do {
+			int state = layer.mImage == null ? VolatileImage.IMAGE_INCOMPATIBLE : layer.mImage.validate(config);
+			if(state == VolatileImage.IMAGE_INCOMPATIBLE) {
+				// First use, or moved to another display
+				layer.flush();
+				layer.mImage = config.createCompatibleVolatileImage(layer.mLayerWidth, layer.mLayerHeight,
+						layer.mTranslucent ? Transparency.TRANSLUCENT : Transparency.OPAQUE);
+				layer.mImageGraphics = layer.mImage.createGraphics();
+				layer.mImageGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				layer.mValid = false;
+			} else if(state == VolatileImage.IMAGE_RESTORED) {
+				layer.mValid = false;
+			}
+
+			if(!layer.mValid) paintLayer(layer);
+			mGraphics.drawImage(layer.mImage, (int)x, (int)y, null);
+		} while(layer.mImage.contentsLost());
+	}
+
+	// The frame's transforms while a layer is painted
+	private final AffineTransform mFrameBase = new AffineTransform();
+	private final AffineTransform mFrameTransform = new AffineTransform();
+
+	// Paints a layer's contents into its image, drawing functions going to the
+	// image until the painter returns
+	private void paintLayer(Layer layer) {
+		Graphics2D frame = mGraphics;
+		Graphics2D frameBase = mBaseGraphics;
+		mFrameBase.setTransform(mBase);
+		mFrameTransform.setTransform(mTransform);
+		int saved = mSavedCount;
+
+		Graphics2D g = layer.mImageGraphics;
+		g.setTransform(IDENTITY);
+		if(layer.mTranslucent) {
+			// Start from clear rather than from whatever the image held
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, layer.mLayerWidth, layer.mLayerHeight);
+			g.setComposite(AlphaComposite.SrcOver);
+		}
+		g.setBackground(frame.getBackground());
+		g.setColor(frame.getColor());
+
+		mGraphics = g;
+		mBaseGraphics = g;
+		mBase.setToIdentity();
+		mTransform.setToIdentity();
+		try {
+			layer.mPainter.paintLayer();
+		} finally {
+			mGraphics = frame;
+			mBaseGraphics = frameBase;
+			mBase.setTransform(mFrameBase);
+			mTransform.setTransform(mFrameTransform);
+			mSavedCount = saved;
+		}
+		layer.mValid = true;
+		layer.mRenders++;
+	}
+
 	//-------------------------------------------------------
 	// Transform Functions
 	//-------------------------------------------------------
 
-	// Stack of transforms
-	Stack<AffineTransform> mTransforms;
+	// Graphics2D.getTransform() returns a new copy on every call, so the engine shadows
+	// the transform instead: mBase is the transform of the graphics when the frame started
+	// (read once per graphics object), mTransform is everything applied since, and the
+	// stack holds preallocated copies of mTransform
+	private static final AffineTransform IDENTITY = new AffineTransform();
+	private Graphics2D mBaseGraphics;
+	private final AffineTransform mBase = new AffineTransform();
+	private final AffineTransform mTransform = new AffineTransform();
+	private final AffineTransform mWork = new AffineTransform();
+	private AffineTransform[] mSaved = new AffineTransform[0];
+	private int mSavedCount = 0;
 
 	// Save the current transform
 	public void saveCurrentTransform() {
+		// Grow the stack the first time it gets this deep
+		if(mSavedCount == mSaved.length) {
+			mSaved = java.util.Arrays.copyOf(mSaved, mSaved.length + 8);
+			for(int i = mSavedCount; i < mSaved.length; i++) mSaved[i] = new AffineTransform();
+		}
+
 		// Push transform onto the stack
-		mTransforms.push(mGraphics.getTransform());
+		mSaved[mSavedCount++].setTransform(mTransform);
 	}
 
 	// Restores the last transform
 	public void restoreLastTransform() {
-		// Set current transform to the top of the stack.
-		mGraphics.setTransform(mTransforms.peek());
-
-		// If there is more than one transform on the stack
-		if(mTransforms.size() > 1) {
-			// Pop a transform off the stack
-			mTransforms.pop();
+		// With nothing saved this is the transform the frame started with
+		if(mSavedCount == 0) {
+			applyTransform(IDENTITY);
+			return;
 		}
+
+		// Set current transform to the top of the stack, and pop it
+		applyTransform(mSaved[--mSavedCount]);
+	}
+
+	// Sets the graphics to the frame's base transform followed by target
+	private void applyTransform(AffineTransform target) {
+		mWork.setTransform(mBase);
+		mWork.concatenate(target);
+		mGraphics.setTransform(mWork);
+		mTransform.setTransform(target);
 	}
 
 	// This function translates the drawing context by (x,y)
 	void translate(double x, double y) {
 		// Translate the drawing context
 		mGraphics.translate(x,y);
+		mTransform.translate(x,y);
 	}
 
 	// This function rotates the drawing context by a degrees
 	void rotate(double a) {
 		// Rotate the drawing context
 		mGraphics.rotate(Math.toRadians(a));
+		mTransform.rotate(Math.toRadians(a));
 	}
 
 	// This function scales the drawing context by (x,y)
 	void scale(double x, double y) {
 		// Scale the drawing context
 		mGraphics.scale(x, y);
+		mTransform.scale(x, y);
 	}
 
 	// This function shears the drawing context by (x,y)
 	void shear(double x, double y) {
 		// Shear the drawing context
 		mGraphics.shear(x, y);
+		mTransform.shear(x, y);
 	}
 
 	//-------------------------------------------------------
 	// Sound Functions
 	//-------------------------------------------------------
 
+	// Every sound is mixed in software on one output line, see AudioMixer.
+	// The line is opened by the first loadAudio or loadMusic, on the loader rather
+	// than the game thread, and published through mMixer. A clip or stream is only
+	// handed out once that is done, so playing reads mMixer and never waits on the lock.
+	static final int MIXER_VOICES = 16;
+	volatile AudioMixer mMixer;
+	boolean mMixerFailed = false;
+	final Object mMixerLock = new Object();
+
+	// Priorities for voice stealing: a busy mixer drops effects before music
+	public static final int EFFECT_PRIORITY = 0;
+	public static final int LOOP_PRIORITY = 100;
+
+	// Opens the audio line the first time; called by the loaders, since opening it can take a while
+	void openMixer() {
+		if(mMixer != null) return;
+		synchronized(mMixerLock) {
+			if(mMixer != null || mMixerFailed) return;
+			try {
+				mMixer = new AudioMixer(MIXER_VOICES);
+			} catch(Exception exception) {
+				// Play nothing rather than retry on every load
+				mMixerFailed = true;
+				System.out.println("Error: could not open an audio line, sound is off\n");
+			}
+		}
+	}
+
+	// Returns the number of sounds currently playing
+	public int getActiveAudioCount() {
+		AudioMixer mixer = mMixer;
+		return mixer == null ? 0 : mixer.getActiveVoices();
+	}
+
 	// Class used to store an audio clip
 	public class AudioClip {
 		// Format
 		AudioFormat mFormat;
 
-		// Audio Data
+		// Audio Data, as read; dropped once converted to mSamples
 		byte[] mData;
 
 		// Buffer Length
 		long mLength;
 
-		// Loop Clip
-		Clip mLoopClip;
-
-		public Clip getLoopClip() {
-			// return mLoopClip
-			return mLoopClip;
-		}
-
-		public void setLoopClip(Clip clip) {
-			// Set mLoopClip to clip
-			mLoopClip = clip;
-		}
+		// The data as samples in the mixer's format, null if it cannot be played
+		short[] mSamples;
 
 		public AudioFormat getAudioFormat() {
 			// Return mFormat
 			return mFormat;
 		}
 
+		// Returns null once the clip has been converted for the mixer
 		public byte[] getData() {
 			// Return mData
 			return mData;
@@ -620,6 +2067,11 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 			return mLength;
 		}
 
+		public short[] getSamples() {
+			// Return mSamples
+			return mSamples;
+		}
+
 		public AudioClip(AudioInputStream stream) {
 			// Get Format
 			mFormat = stream.getFormat();
@@ -641,13 +2093,22 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 				System.exit(1);
 			}
 
-			// Set LoopClip to null
-			mLoopClip = null;
+			// Convert once here, so playing is only a queue write
+			mSamples = AudioMixer.toSamples(mFormat, mData);
+			if(mSamples == null) {
+				System.out.println("Error: unsupported audio format " + mFormat + "\n");
+			}
+
+			// Only the samples are played, so the bytes would just double the clip
+			mData = null;
 		}
 	}
 
 	// Loads the AudioClip stored in the file specified by filename
 	public AudioClip loadAudio(String filename) {
+		// Nothing is played when headless
+		if(mHeadless) return null;
+
 		try {
 			// Open File
 			File file = new File(filename);
@@ -658,6 +2119,9 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 			// Create Audio Clip
 			AudioClip clip = new AudioClip(audio);
 
+			// Have the line ready before the first sound
+			openMixer();
+
 			// Return Audio Clip
 			return clip;
 		} catch(Exception e) {
@@ -669,34 +2133,44 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 		return null;
 	}
 
+	// Silences all playback without unloading any audio
+	boolean mMuted = false;
+
+	public void setMuted(boolean muted) {
+		mMuted = muted;
+	}
+
 	// Plays an AudioClip
 	public void playAudio(AudioClip audioClip) {
-		// Check audioClip for null
-		if(audioClip == null) {
-			// Print error message
-			System.out.println("Error: audioClip is null\n");
+		playAudio(audioClip, 0, EFFECT_PRIORITY);
+	}
 
-			// Return
-			return;
-		}
+	// Plays an AudioClip with a volume in decibels
+	public void playAudio(AudioClip audioClip, float volume) {
+		playAudio(audioClip, volume, EFFECT_PRIORITY);
+	}
 
-		try {
-			// Create a Clip
-			Clip clip = AudioSystem.getClip();
+	// Plays an AudioClip with a volume in decibels. When every voice is busy it takes
+	// the voice of the oldest sound with the lowest priority, if that is not above priority.
+	public void playAudio(AudioClip audioClip, float volume, int priority) {
+		queueAudio(audioClip, volume, priority, false);
+	}
 
-			// Load data
-			clip.open(audioClip.getAudioFormat(), audioClip.getData(), 0, (int)audioClip.getBufferSize());
+	// Starts playing an AudioClip on loop, or restarts it if it is already looping
+	public void startAudioLoop(AudioClip audioClip) {
+		queueAudio(audioClip, 0, LOOP_PRIORITY, true);
+	}
 
-			// Play Clip
-			clip.start();
-		} catch(Exception exception) {
-			// Display Error Message
-			System.out.println("Error playing Audio Clip\n");
-		}
+	// Starts playing an AudioClip on loop with a volume in decibels
+	public void startAudioLoop(AudioClip audioClip, float volume) {
+		queueAudio(audioClip, volume, LOOP_PRIORITY, true);
 	}
 
-	// Plays an AudioClip with a volume in decibels
-	public void playAudio(AudioClip audioClip, float volume) {
+	// Hands a sound to the mixer; this only writes to its queue
+	void queueAudio(AudioClip audioClip, float volume, int priority, boolean loop) {
+		// Nothing is played when headless or muted
+		if(mHeadless || mMuted) return;
+
 		// Check audioClip for null
 		if(audioClip == null) {
 			// Print error message
@@ -706,138 +2180,110 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 			return;
 		}
 
-		try {
-			// Create a Clip
-			Clip clip = AudioSystem.getClip();
-
-			// Load data
-			clip.open(audioClip.getAudioFormat(), audioClip.getData(), 0, (int)audioClip.getBufferSize());
+		AudioMixer mixer = mMixer;
+		if(mixer == null || audioClip.getSamples() == null) return;
 
-			// Create Controls
-			FloatControl control = (FloatControl)clip.getControl(FloatControl.Type.MASTER_GAIN);
-
-			// Set Volume
-			control.setValue(volume);
+		mixer.play(audioClip.getSamples(), gain(volume), priority, loop);
+	}
 
-			// Play Clip
-			clip.start();
-		} catch(Exception exception) {
-			// Display Error Message
-			System.out.println("Error: could not play Audio Clip\n");
-		}
+	// Converts a volume in decibels to a linear gain
+	static float gain(float volume) {
+		return volume == 0 ? 1f : (float)Math.pow(10, volume / 20.0);
 	}
 
-	// Starts playing an AudioClip on loop
-	public void startAudioLoop(AudioClip audioClip) {
-		// Check audioClip for null
-		if(audioClip == null) {
-			// Print error message
-			System.out.println("Error: audioClip is null\n");
+	// Stops an AudioClip playing
+	public void stopAudioLoop(AudioClip audioClip) {
+		// Nothing is played when headless or muted
+		if(mHeadless || mMuted || audioClip == null) return;
 
-			// Return
-			return;
+		AudioMixer mixer = mMixer;
+		if(mixer != null && audioClip.getSamples() != null) {
+			// Stop Clip playing
+			mixer.stop(audioClip.getSamples());
 		}
+	}
 
-		// Get Loop Clip
-		Clip clip = audioClip.getLoopClip();
-
-		// Create Loop Clip if necessary
-		if(clip == null) {
-			try {
-				// Create a Clip
-				clip = AudioSystem.getClip();
+	// Opens a WAV file to be streamed as music: memory-mapped and read by the mixer
+	// as it plays, instead of decoded onto the heap like an AudioClip
+	public MusicStream loadMusic(String filename) {
+		// Nothing is played when headless
+		if(mHeadless) return null;
 
-				// Load data
-				clip.open(audioClip.getAudioFormat(), audioClip.getData(), 0, (int)audioClip.getBufferSize());
+		try {
+			// Map the file
+			MusicStream music = MusicStream.open(filename);
 
-				// Set Clip to Loop
-				clip.loop(Clip.LOOP_CONTINUOUSLY);
+			// Have the line ready before the music starts
+			openMixer();
 
-				// Set Loop Clip
-				audioClip.setLoopClip(clip);
-			} catch(Exception exception) {
-				// Display Error Message
-				System.out.println("Error: could not play Audio Clip\n");
-			}
+			// Return Music
+			return music;
+		} catch(IOException e) {
+			// Catch Exception
+			System.out.println("Error: cannot stream Music File " + filename + ": " + e.getMessage() + "\n");
 		}
 
-		// Set Frame Position to 0
-		clip.setFramePosition(0);
+		// Return Null
+		return null;
+	}
 
-		// Start Audio Clip playing
-		clip.start();
+	// Starts looping music from its beginning, replacing any music playing
+	public void startMusic(MusicStream music) {
+		startMusic(music, 0);
 	}
 
-	// Starts playing an AudioClip on loop with a volume in decibels
-	public void startAudioLoop(AudioClip audioClip, float volume) {
-		// Check audioClip for null
-		if(audioClip == null) {
+	// Starts looping music with a volume in decibels
+	public void startMusic(MusicStream music, float volume) {
+		// Nothing is played when headless or muted
+		if(mHeadless || mMuted) return;
+
+		// Check music for null
+		if(music == null) {
 			// Print error message
-			System.out.println("Error: audioClip is null\n");
+			System.out.println("Error: music is null\n");
 
 			// Return
 			return;
 		}
 
-		// Get Loop Clip
-		Clip clip = audioClip.getLoopClip();
-
-		// Create Loop Clip if necessary
-		if(clip == null) {
-			try {
-				// Create a Clip
-				clip = AudioSystem.getClip();
-
-				// Load data
-				clip.open(audioClip.getAudioFormat(), audioClip.getData(), 0, (int)audioClip.getBufferSize());
-
-				// Create Controls
-				FloatControl control = (FloatControl)clip.getControl(FloatControl.Type.MASTER_GAIN);
-
-				// Set Volume
-				control.setValue(volume);
-
-				// Set Clip to Loop
-				clip.loop(Clip.LOOP_CONTINUOUSLY);
-
-				// Set Loop Clip
-				audioClip.setLoopClip(clip);
-			} catch(Exception exception) {
-				// Display Error Message
-				System.out.println("Error: could not play Audio Clip\n");
-			}
-		}
-
-		// Set Frame Position to 0
-		clip.setFramePosition(0);
-
-		// Start Audio Clip playing
-		clip.start();
+		AudioMixer mixer = mMixer;
+		if(mixer != null) mixer.playMusic(music, gain(volume));
 	}
 
-	// Stops an AudioClip playing
-	public void stopAudioLoop(AudioClip audioClip) {
-		// Get Loop Clip
-		Clip clip = audioClip.getLoopClip();
-
-		// Check clip is not null
-		if(clip != null){
-			// Stop Clip playing
-			clip.stop();
-		}
+	// Stops the music
+	public void stopMusic() {
+		AudioMixer mixer = mMixer;
+		if(mixer != null) mixer.playMusic(null, 0);
 	}
 
 	//-------------------------------------------------------
 	// Maths Functions
 	//-------------------------------------------------------
+	// Every rand() call draws from this one generator, so a seed
+	// together with the input log reproduces a match exactly
 	Random mRandom = null;
+	long mSeed = 0;
+
+	// Reseeds the random number generator
+	public void setSeed(long seed) {
+		mSeed = seed;
+		mRandom = new Random(seed);
+	}
+
+	// Returns the seed of the random number generator
+	public long getSeed() {
+		if(mRandom == null) {
+			setSeed(System.nanoTime());
+		}
+		return mSeed;
+	}
 
 	// Function that returns a random integer between 0 and max
 	public int rand(int max) {
 		// Check if mRandom Exists
 		if(mRandom == null) {
-			// Create a new Random Object
-			mRandom = new Random();
+			// Seed a new Random Object
+			setSeed(System.nanoTime());
 		}
 
 		// Generate a random number
@@ -851,8 +2297,8 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 	public float rand(float max) {
 		// Check if mRandom Exists
 		if(mRandom == null) {
-			// Create a new Random Object
-			mRandom = new Random();
+			// Seed a new Random Object
+			setSeed(System.nanoTime());
 		}
 
 		// Generate a random number
@@ -866,8 +2312,8 @@ public abstract class GameEngine implements KeyListener, MouseListener, MouseMot
 	public double rand(double max) {
 		// Check if mRandom Exists
 		if(mRandom == null) {
-			// Create a new Random Object
-			mRandom = new Random();
+			// Seed a new Random Object
+			setSeed(System.nanoTime());
 		}
 
 		// Generate a random number
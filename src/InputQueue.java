@@ -0,0 +1,98 @@
+import java.awt.AWTEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+
+/**
+ * Key and mouse events waiting for the next tick. The AWT event thread adds them as they
+ * arrive and the game thread takes them, in order, at the start of each tick, so the game
+ * sees input between ticks rather than in the middle of one.
+ *
+ * A fixed ring with one producer and one consumer: adding never blocks or allocates.
+ * The queue also tracks how long events waited, from {@link InputEvent#getWhen()} to the
+ * tick that handled them.
+ *
+ * The last RESERVE slots only take key and button releases, so a flood of presses or mouse
+ * moves (or events piling up before the game loop starts) cannot crowd out the release that
+ * ends a held key. Should a release be lost all the same, {@link #consumeLostRelease()}
+ * tells the game to let go of every key.
+ */
+public class InputQueue {
+    private static final int CAPACITY = 256;             // a power of two
+    private static final int RESERVE = 32;               // slots kept for releases
+
+    private final AWTEvent[] events = new AWTEvent[CAPACITY];
+    private volatile long head = 0;                       // next to take, game thread only
+    private volatile long tail = 0;                       // next to fill, AWT thread only
+    private volatile long dropped = 0;
+    private volatile boolean lostRelease = false;
+
+    // Waiting times of the events taken, game thread only
+    private long latencyTotal = 0;
+    private long latencyCount = 0;
+    private long latencyMax = 0;
+
+    /** Queues an event; returns false, dropping it, if the queue is full (or only has room for releases) */
+    public boolean offer(AWTEvent e) {
+        long t = tail;
+        long free = CAPACITY - (t - head);
+        boolean release = isRelease(e);
+        if (free == 0 || (free <= RESERVE && !release)) {
+            dropped++;
+            if (release) lostRelease = true;
+            return false;
+        }
+        events[(int) (t & (CAPACITY - 1))] = e;
+        tail = t + 1;
+        return true;
+    }
+
+    /** Takes the oldest waiting event, or null if there is none */
+    public AWTEvent poll() {
+        long h = head;
+        if (h == tail) return null;
+        int slot = (int) (h & (CAPACITY - 1));
+        AWTEvent e = events[slot];
+        events[slot] = null;
+        head = h + 1;
+
+        if (e instanceof InputEvent) {
+            long waited = Math.max(0, System.currentTimeMillis() - ((InputEvent) e).getWhen());
+            latencyTotal += waited;
+            latencyCount++;
+            latencyMax = Math.max(latencyMax, waited);
+        }
+        return e;
+    }
+
+    /** True once after a key or button release was dropped; game thread only */
+    public boolean consumeLostRelease() {
+        if (!lostRelease) return false;
+        lostRelease = false;
+        return true;
+    }
+
+    private static boolean isRelease(AWTEvent e) {
+        return e.getID() == KeyEvent.KEY_RELEASED || e.getID() == MouseEvent.MOUSE_RELEASED;
+    }
+
+    /** Number of events waiting */
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    /** Events dropped because the queue was full */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /** Average milliseconds from an event happening to a tick handling it */
+    public double getAverageLatency() {
+        return latencyCount == 0 ? 0 : (double) latencyTotal / latencyCount;
+    }
+
+    /** Longest an event has waited, in milliseconds */
+    public long getMaxLatency() {
+        return latencyMax;
+    }
+}
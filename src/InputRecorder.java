@@ -0,0 +1,150 @@
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes a compact binary log of everything that feeds the simulation: the RNG seed,
+ * the game's settings that change how it plays, the tick length whenever it changes, and
+ * every input event tagged with the tick it was delivered before. Together with the seed
+ * this replays a match bit for bit (see {@link InputReplay}).
+ *
+ * Layout: int magic "SBRP", byte version, long seed, byte settings count and as many
+ * long settings (version 3 on; version 2 has none), then records of
+ * [varint ticks since previous record][byte type][payload]:
+ * key events carry a varint key code, mouse events zigzag varints x, y and button,
+ * tick lengths the raw bits of the double, and the closing END record a flag byte
+ * followed by the game's state hash when it was known.
+ */
+public class InputRecorder {
+    static final int MAGIC   = 0x53425250;
+    static final int VERSION = 3;
+
+    static final int KEY_PRESSED    = 0;
+    static final int KEY_RELEASED   = 1;
+    static final int MOUSE_PRESSED  = 2;
+    static final int MOUSE_RELEASED = 3;
+    static final int MOUSE_CLICKED  = 4;
+    static final int MOUSE_MOVED    = 5;
+    static final int MOUSE_DRAGGED  = 6;
+    static final int TICK_LENGTH    = 7;
+    static final int END            = 8;
+
+    private final String filename;
+    private DataOutputStream out;
+    private long lastTick = 0;
+    private double lastDt = Double.NaN;
+
+    /** Opens filename and writes the header, with up to 255 settings; ticks are counted from 0 */
+    public InputRecorder(String filename, long seed, long[] settings) throws IOException {
+        if (settings.length > 255) throw new IllegalArgumentException(settings.length + " settings, at most 255");
+        this.filename = filename;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(seed);
+        out.writeByte(settings.length);
+        for (long setting : settings) out.writeLong(setting);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public synchronized boolean isOpen() {
+        return out != null;
+    }
+
+    /** Called before each tick runs; logs the tick length when it changes */
+    public synchronized void tick(long tick, double dt) {
+        if (out == null || dt == lastDt) return;
+        try {
+            record(tick, TICK_LENGTH);
+            out.writeLong(Double.doubleToRawLongBits(dt));
+            lastDt = dt;
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    /** Logs a key press or release delivered before tick */
+    public synchronized void key(long tick, int id, int keyCode) {
+        if (out == null) return;
+        int type;
+        if (id == KeyEvent.KEY_PRESSED) type = KEY_PRESSED;
+        else if (id == KeyEvent.KEY_RELEASED) type = KEY_RELEASED;
+        else return;
+        try {
+            record(tick, type);
+            writeVarint(keyCode);
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    /** Logs a mouse event delivered before tick */
+    public synchronized void mouse(long tick, int id, int x, int y, int button) {
+        if (out == null) return;
+        int type;
+        switch (id) {
+            case MouseEvent.MOUSE_PRESSED:  type = MOUSE_PRESSED;  break;
+            case MouseEvent.MOUSE_RELEASED: type = MOUSE_RELEASED; break;
+            case MouseEvent.MOUSE_CLICKED:  type = MOUSE_CLICKED;  break;
+            case MouseEvent.MOUSE_MOVED:    type = MOUSE_MOVED;    break;
+            case MouseEvent.MOUSE_DRAGGED:  type = MOUSE_DRAGGED;  break;
+            default: return;
+        }
+        try {
+            record(tick, type);
+            writeVarint(zigzag(x));
+            writeVarint(zigzag(y));
+            writeVarint(button);
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    /** Writes the END record and closes the log; the hash is checked on replay when known */
+    public synchronized void finish(long tick, boolean hashKnown, long stateHash) {
+        if (out == null) return;
+        try {
+            record(tick, END);
+            out.writeBoolean(hashKnown);
+            out.writeLong(hashKnown ? stateHash : 0);
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Error: could not finish input log " + filename);
+        }
+        out = null;
+    }
+
+    private void record(long tick, int type) throws IOException {
+        writeVarint(tick - lastTick);
+        out.writeByte(type);
+        lastTick = tick;
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private void fail() {
+        System.out.println("Error: could not write input log " + filename);
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+        out = null;
+    }
+}
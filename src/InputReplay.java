@@ -0,0 +1,182 @@
+import java.awt.Canvas;
+import java.awt.Component;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An input log written by {@link InputRecorder}, loaded into primitive arrays and fed
+ * back to a game tick by tick. Events are rebuilt as AWT events on a dummy component,
+ * so the game sees exactly the calls it saw when the log was recorded.
+ */
+public class InputReplay {
+    private final long seed;
+    private final long[] settings;
+
+    // One entry per record, in order
+    private long[] ticks = new long[256];
+    private byte[] types = new byte[256];
+    private long[] args  = new long[256 * 3];
+    private int count = 0;
+
+    private long endTick;
+    private boolean hashKnown = false;
+    private long stateHash = 0;
+
+    private double tickLength = 1.0 / 120;
+    private int cursor = 0;
+    private Component source;
+
+    private InputReplay(long seed, long[] settings) {
+        this.seed = seed;
+        this.settings = settings;
+    }
+
+    /** Reads a log, returning null if it cannot be read */
+    public static InputReplay load(String filename) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            int version = in.readInt() == InputRecorder.MAGIC ? in.readByte() : -1;
+            if (version < 2 || version > InputRecorder.VERSION) {
+                System.out.println("Error: " + filename + " is not an input log");
+                return null;
+            }
+            long seed = in.readLong();
+            // Version 2 logs were recorded before there were settings
+            long[] settings = new long[version < 3 ? 0 : in.readUnsignedByte()];
+            for (int i = 0; i < settings.length; i++) settings[i] = in.readLong();
+            InputReplay replay = new InputReplay(seed, settings);
+            replay.read(in);
+            return replay;
+        } catch (IOException e) {
+            System.out.println("Error: could not read input log " + filename);
+            return null;
+        }
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        long tick = 0;
+        while (true) {
+            long delta;
+            try {
+                delta = readVarint(in);
+            } catch (EOFException e) {
+                // Log cut short (crash or kill): play what there is
+                endTick = count == 0 ? 0 : ticks[count - 1];
+                return;
+            }
+            tick += delta;
+            int type = in.readUnsignedByte();
+            if (type == InputRecorder.END) {
+                endTick   = tick;
+                hashKnown = in.readBoolean();
+                stateHash = in.readLong();
+                return;
+            }
+
+            grow();
+            ticks[count] = tick;
+            types[count] = (byte) type;
+            int a = count * 3;
+            switch (type) {
+                case InputRecorder.KEY_PRESSED:
+                case InputRecorder.KEY_RELEASED:
+                    args[a] = readVarint(in);
+                    break;
+                case InputRecorder.TICK_LENGTH:
+                    args[a] = in.readLong();
+                    break;
+                default:
+                    args[a]     = unzigzag(readVarint(in));
+                    args[a + 1] = unzigzag(readVarint(in));
+                    args[a + 2] = readVarint(in);
+                    break;
+            }
+            count++;
+        }
+    }
+
+    private void grow() {
+        if (count < ticks.length) return;
+        ticks = Arrays.copyOf(ticks, count * 2);
+        types = Arrays.copyOf(types, count * 2);
+        args  = Arrays.copyOf(args, count * 6);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    private static int unzigzag(long value) {
+        int z = (int) value;
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    public long getSeed() { return seed; }
+    public long[] getSettings() { return settings; }
+    public long getEndTick() { return endTick; }
+    public boolean isHashKnown() { return hashKnown; }
+    public long getStateHash() { return stateHash; }
+    public int getEventCount() { return count; }
+
+    /** Length of the next tick, as last logged */
+    public double getTickLength() { return tickLength; }
+
+    /** Delivers every record logged before tick to the engine */
+    public void dispatch(GameEngine engine, long tick) {
+        while (cursor < count && ticks[cursor] <= tick) {
+            int a = cursor * 3;
+            switch (types[cursor]) {
+                case InputRecorder.TICK_LENGTH:
+                    tickLength = Double.longBitsToDouble(args[a]);
+                    break;
+                case InputRecorder.KEY_PRESSED:
+                    engine.dispatchKey(key(KeyEvent.KEY_PRESSED, (int) args[a]));
+                    break;
+                case InputRecorder.KEY_RELEASED:
+                    engine.dispatchKey(key(KeyEvent.KEY_RELEASED, (int) args[a]));
+                    break;
+                case InputRecorder.MOUSE_PRESSED:
+                    engine.dispatchMouse(mouse(MouseEvent.MOUSE_PRESSED, a));
+                    break;
+                case InputRecorder.MOUSE_RELEASED:
+                    engine.dispatchMouse(mouse(MouseEvent.MOUSE_RELEASED, a));
+                    break;
+                case InputRecorder.MOUSE_CLICKED:
+                    engine.dispatchMouse(mouse(MouseEvent.MOUSE_CLICKED, a));
+                    break;
+                case InputRecorder.MOUSE_MOVED:
+                    engine.dispatchMouse(mouse(MouseEvent.MOUSE_MOVED, a));
+                    break;
+                case InputRecorder.MOUSE_DRAGGED:
+                    engine.dispatchMouse(mouse(MouseEvent.MOUSE_DRAGGED, a));
+                    break;
+                default:
+                    break;
+            }
+            cursor++;
+        }
+    }
+
+    private Component source() {
+        if (source == null) source = new Canvas();
+        return source;
+    }
+
+    private KeyEvent key(int id, int keyCode) {
+        return new KeyEvent(source(), id, 0, 0, keyCode, KeyEvent.CHAR_UNDEFINED);
+    }
+
+    private MouseEvent mouse(int id, int a) {
+        return new MouseEvent(source(), id, 0, 0, (int) args[a], (int) args[a + 1], 1, false, (int) args[a + 2]);
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Command-line Monte Carlo simulator for tuning {@link PhysicsConfig}. Plays robot-vs-robot
+ * PlayOne matches headless for every point of a parameter grid, spread over all cores with a
+ * parallel stream, and reports rally length, points per serve side and match duration.
+ *
+ * <pre>
+ * java MatchSimulator [--matches N] [--seed S] [--threads T] [--tick-rate HZ] [--ai-rate HZ] [--csv FILE] [--hard]
+ *                     [name=v1,v2,...] [name=from:to:step] ...
+ * </pre>
+ * Names are those of {@link PhysicsConfig#NAMES}; the grid is the cartesian product.
+ * With --hard the right robot plans its hits by rollouts ({@link RolloutPlanner}); --ai-rate
+ * sets how many times a second the standard robots decide, every tick by default.
+ */
+public class MatchSimulator {
+    private static final double MATCH_SECONDS_LIMIT = 3600;
+    private static final int MAX_RANGE_VALUES = 10000;
+    private static final String RANGE_USAGE = "expected from:to:step with from <= to and step > 0";
+
+    private final List<String> names = new ArrayList<>();
+    private final List<double[]> values = new ArrayList<>();
+    private int matches = 1000;
+    private long seed = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int tickRate = 120;
+    private int aiRate = 0;              // 0: every tick
+    private String csv = null;
+    private boolean hard = false;
+
+    private final LongAdder ticks = new LongAdder();
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        MatchSimulator simulator = new MatchSimulator();
+        try {
+            simulator.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        simulator.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--hard")) {
+                hard = true;
+                continue;
+            }
+            if (arg.startsWith("--") && i + 1 >= args.length) {
+                throw new IllegalArgumentException(arg + " needs a value");
+            }
+            switch (arg) {
+                case "--matches":   matches  = positive(arg, args[++i]);    break;
+                case "--seed":      seed     = Long.parseLong(args[++i]);   break;
+                case "--threads":   threads  = positive(arg, args[++i]);    break;
+                case "--tick-rate": tickRate = positive(arg, args[++i]);    break;
+                case "--ai-rate":   aiRate   = Integer.parseInt(args[++i]); break;
+                case "--csv":       csv      = args[++i];                   break;
+                default:
+                    int eq = arg.indexOf('=');
+                    if (eq < 0) throw new IllegalArgumentException("expected name=values, got " + arg);
+                    String name = arg.substring(0, eq);
+                    new PhysicsConfig().get(name); // rejects unknown names
+                    names.add(name);
+                    values.add(parseValues(arg.substring(eq + 1)));
+                    break;
+            }
+        }
+        // Matches are numbered by int, so the whole run has to fit one
+        try {
+            if (Math.multiplyExact(gridSize(), (long) matches) <= Integer.MAX_VALUE) return;
+        } catch (ArithmeticException e) {
+            // more than a long holds, too many either way
+        }
+        throw new IllegalArgumentException("grid points x matches comes to more than " + Integer.MAX_VALUE
+                + " matches; use fewer values or fewer --matches");
+    }
+
+    /** The value of an int option that has to be above zero */
+    private static int positive(String option, String text) {
+        int value = Integer.parseInt(text);
+        if (value <= 0) throw new IllegalArgumentException(option + " must be above zero, got " + text);
+        return value;
+    }
+
+    /** "a,b,c" or "from:to:step" */
+    private static double[] parseValues(String text) {
+        if (text.contains(":")) {
+            String[] parts = text.split(":");
+            if (parts.length != 3) throw new IllegalArgumentException(RANGE_USAGE + ", got " + text);
+            double from = Double.parseDouble(parts[0]);
+            double to   = Double.parseDouble(parts[1]);
+            double step = Double.parseDouble(parts[2]);
+            if (!(step > 0) || !(from <= to)) throw new IllegalArgumentException(RANGE_USAGE + ", got " + text);
+            double n = Math.floor((to - from) / step + 1e-9) + 1;
+            if (n > MAX_RANGE_VALUES) {
+                throw new IllegalArgumentException(text + " has more than " + MAX_RANGE_VALUES + " values; use a larger step");
+            }
+            double[] v = new double[(int) n];
+            for (int i = 0; i < v.length; i++) v[i] = from + i * step;
+            return v;
+        }
+        String[] parts = text.split(",");
+        double[] v = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) v[i] = Double.parseDouble(parts[i]);
+        return v;
+    }
+
+    /** Physics for grid point index, varying the first parameter fastest */
+    private PhysicsConfig configAt(int index) {
+        PhysicsConfig config = new PhysicsConfig();
+        for (int p = 0; p < names.size(); p++) {
+            double[] v = values.get(p);
+            config.set(names.get(p), v[index % v.length]);
+            index /= v.length;
+        }
+        return config;
+    }
+
+    private long gridSize() {
+        long size = 1;
+        for (double[] v : values) size = Math.multiplyExact(size, (long) v.length);
+        return size;
+    }
+
+    private void run() {
+        // parse() has made sure these fit
+        final int points = Math.toIntExact(gridSize());
+        final int total  = Math.toIntExact(Math.multiplyExact((long) points, (long) matches));
+        System.out.printf("%d grid points x %d matches on %d threads%n", points, matches, threads);
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = null;
+        MatchStats[] results;
+        try {
+            pool = new ForkJoinPool(threads);
+            // Every (grid point, match) pair is one task; stats merge per grid point
+            results = pool.submit(() -> IntStream.range(0, total).parallel().collect(
+                    () -> new MatchStats[points],
+                    (acc, task) -> {
+                        int point = task / matches;
+                        if (acc[point] == null) acc[point] = new MatchStats();
+                        acc[point].merge(playMatch(configAt(point), mix(seed, task)));
+                    },
+                    (a, b) -> {
+                        for (int i = 0; i < points; i++) {
+                            if (b[i] == null) continue;
+                            if (a[i] == null) a[i] = b[i];
+                            else a[i].merge(b[i]);
+                        }
+                    })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("simulation failed", e);
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        report(results);
+        System.out.printf(Locale.ROOT, "%d matches, %d ticks in %.2f s (%.0f matches/s, %.1f M ticks/s)%n",
+                total, ticks.sum(), seconds, total / seconds, ticks.sum() / seconds / 1e6);
+    }
+
+    /** One robot-vs-robot PlayOne match with the given physics and seed */
+    private MatchStats playMatch(PhysicsConfig config, long matchSeed) {
+        Stickman_Badminton game = new Stickman_Badminton(true, config);
+        game.init();
+        game.setSeed(matchSeed);
+        game.setFixedTimestep(tickRate);
+        game.setAutoPlay(true);
+        game.setHardAI(hard);
+        game.setAIRate(aiRate > 0 ? aiRate : tickRate);
+
+        MatchStats stats = new MatchStats();
+        game.setStats(stats);
+        game.startMatch(Stickman_Badminton.GameState.PlayOne);
+        ticks.add(game.runHeadless((long) (MATCH_SECONDS_LIMIT * tickRate)));
+        if (!game.headlessDone()) stats.matchEnd(game.getMatchTime(), false);
+        return stats;
+    }
+
+    /** Spreads consecutive task numbers over unrelated seeds (SplitMix64 finaliser) */
+    private static long mix(long base, long task) {
+        long z = base + task * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private void report(MatchStats[] results) {
+        StringBuilder header = new StringBuilder();
+        for (String name : names) header.append(name).append(',');
+        header.append("matches,timeouts,rally_mean,rally_p50,rally_p90,rally_p99,"
+                + "left_serve_points,left_server_win,right_serve_points,right_server_win,"
+                + "duration_p10,duration_p50,duration_p90");
+
+        PrintWriter out = null;
+        if (csv != null) {
+            try {
+                out = new PrintWriter(new FileWriter(csv));
+                out.println(header);
+            } catch (IOException e) {
+                System.out.println("Error: could not write " + csv);
+            }
+        }
+
+        System.out.println(header);
+        for (int point = 0; point < results.length; point++) {
+            MatchStats s = results[point];
+            if (s == null) continue;
+            PhysicsConfig config = configAt(point);
+            StringBuilder row = new StringBuilder();
+            for (String name : names) row.append(format(config.get(name))).append(',');
+            row.append(s.getMatches()).append(',').append(s.getTimeouts()).append(',')
+                    .append(format(s.meanRally())).append(',')
+                    .append(s.rallyQuantile(0.5)).append(',')
+                    .append(s.rallyQuantile(0.9)).append(',')
+                    .append(s.rallyQuantile(0.99)).append(',')
+                    .append(s.pointsServed(true)).append(',').append(format(s.serverWinRate(true))).append(',')
+                    .append(s.pointsServed(false)).append(',').append(format(s.serverWinRate(false))).append(',')
+                    .append(format(s.durationQuantile(0.1))).append(',')
+                    .append(format(s.durationQuantile(0.5))).append(',')
+                    .append(format(s.durationQuantile(0.9)));
+            System.out.println(row);
+            if (out != null) out.println(row);
+        }
+        if (out != null) out.close();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
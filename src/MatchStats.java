@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+/**
+ * Rally, serve and duration statistics collected from one or more matches.
+ * The game reports serves, hits, points and match ends; the simulator merges
+ * the per-match instances of each grid point.
+ */
+public class MatchStats {
+    public static final int MAX_RALLY = 64;        // longer rallies share the last bin
+
+    // Hits per rally
+    final long[] rallyHistogram = new long[MAX_RALLY + 1];
+    long rallies = 0;
+    long rallyHits = 0;
+
+    // Points won, indexed [server is left ? 0 : 1][winner is left ? 0 : 1]
+    final long[][] points = new long[2][2];
+
+    // Game seconds per match
+    double[] durations = new double[8];
+    int matches = 0;
+    int timeouts = 0;
+
+    // Current rally
+    private boolean serverLeft = true;
+    private int hits = 0;
+
+    /** A serve starts a new rally */
+    public void serve(boolean leftServes) {
+        serverLeft = leftServes;
+        hits = 0;
+    }
+
+    /** A racket touched the shuttle */
+    public void hit() {
+        hits++;
+    }
+
+    /** The shuttle landed and a point went to the left or right player */
+    public void point(boolean leftWins) {
+        rallyHistogram[Math.min(hits, MAX_RALLY)]++;
+        rallies++;
+        rallyHits += hits;
+        points[serverLeft ? 0 : 1][leftWins ? 0 : 1]++;
+        hits = 0;
+    }
+
+    /** A match ended after seconds of game time, or was cut off at the time limit */
+    public void matchEnd(double seconds, boolean finished) {
+        if (!finished) {
+            timeouts++;
+            return;
+        }
+        if (matches == durations.length) durations = Arrays.copyOf(durations, matches * 2);
+        durations[matches++] = seconds;
+    }
+
+    /** Adds other's totals to this */
+    public void merge(MatchStats other) {
+        for (int i = 0; i <= MAX_RALLY; i++) rallyHistogram[i] += other.rallyHistogram[i];
+        rallies   += other.rallies;
+        rallyHits += other.rallyHits;
+        for (int s = 0; s < 2; s++) {
+            for (int w = 0; w < 2; w++) points[s][w] += other.points[s][w];
+        }
+        if (matches + other.matches > durations.length) {
+            durations = Arrays.copyOf(durations, Math.max(durations.length * 2, matches + other.matches));
+        }
+        System.arraycopy(other.durations, 0, durations, matches, other.matches);
+        matches  += other.matches;
+        timeouts += other.timeouts;
+    }
+
+    public double meanRally() {
+        return rallies == 0 ? 0 : (double) rallyHits / rallies;
+    }
+
+    /** Hits per rally at quantile q (0..1); the last bin means MAX_RALLY or more */
+    public int rallyQuantile(double q) {
+        long target = (long) Math.ceil(q * rallies);
+        long seen = 0;
+        for (int i = 0; i <= MAX_RALLY; i++) {
+            seen += rallyHistogram[i];
+            if (seen >= Math.max(1, target)) return i;
+        }
+        return MAX_RALLY;
+    }
+
+    /** Fraction of points the server won when the left (or right) player served */
+    public double serverWinRate(boolean leftServes) {
+        long[] row = points[leftServes ? 0 : 1];
+        long total = row[0] + row[1];
+        return total == 0 ? 0 : (double) row[leftServes ? 0 : 1] / total;
+    }
+
+    public long pointsServed(boolean leftServes) {
+        long[] row = points[leftServes ? 0 : 1];
+        return row[0] + row[1];
+    }
+
+    /** Match duration in game seconds at quantile q (0..1) */
+    public double durationQuantile(double q) {
+        if (matches == 0) return 0;
+        double[] sorted = Arrays.copyOf(durations, matches);
+        Arrays.sort(sorted);
+        return sorted[Math.min(matches - 1, (int) (q * matches))];
+    }
+
+    public int getMatches() { return matches; }
+    public int getTimeouts() { return timeouts; }
+}
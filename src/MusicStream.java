@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Music played straight from a memory-mapped WAV file instead of a decoded AudioClip.
+ * Only the PCM data chunk is mapped; the mixer reads one period at a time from it and
+ * wraps back to the start, so a track loops without a gap. The file costs no heap beyond
+ * this object, and the OS keeps only the pages being played in memory.
+ *
+ * Reads 8 or 16 bit PCM, mono or stereo, at the mixer's rate; other formats throw
+ * {@link UnsupportedFormatException}, and can still be played decoded and resampled as an
+ * AudioClip. A damaged file throws a plain IOException.
+ */
+public class MusicStream {
+    private final ByteBuffer data;
+    private final int channels;
+    private final int bytesPerSample;
+    private final int frames;
+    private int position = 0;                      // next frame, mixer thread only
+
+    private MusicStream(ByteBuffer data, int channels, int bytesPerSample) {
+        this.data = data;
+        this.channels = channels;
+        this.bytesPerSample = bytesPerSample;
+        this.frames = data.capacity() / (channels * bytesPerSample);
+    }
+
+    /** A WAV file the mixer cannot stream as it is */
+    public static class UnsupportedFormatException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public UnsupportedFormatException(String message) {
+            super(message);
+        }
+    }
+
+    /** Maps a WAV file for streaming; throws if it is damaged or not a format the mixer can stream */
+    public static MusicStream open(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(filename + " is too large to map");
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.remaining() < 12 || map.getInt(0) != 0x46464952 || map.getInt(8) != 0x45564157) {
+                throw new IOException(filename + " is not a WAV file");
+            }
+
+            // Walk the chunks for the format and the samples
+            int channels = 0, rate = 0, bits = 0, format = 0;
+            int at = 12;
+            while (at + 8 <= map.limit()) {
+                int id = map.getInt(at);
+                long size = map.getInt(at + 4) & 0xffffffffL;
+                int body = at + 8;
+                if (id == 0x20746d66) {                              // "fmt "
+                    if (size < 16 || body + 16 > map.limit()) {
+                        throw new IOException(filename + " is damaged: short format chunk");
+                    }
+                    format = map.getShort(body) & 0xffff;
+                    channels = map.getShort(body + 2);
+                    rate = map.getInt(body + 4);
+                    bits = map.getShort(body + 14);
+                } else if (id == 0x61746164) {                       // "data"
+                    boolean pcm = format == 1 || format == 0xfffe;
+                    if (!pcm || (bits != 8 && bits != 16) || channels < 1 || channels > 2
+                            || rate != (int) AudioMixer.RATE) {
+                        throw new UnsupportedFormatException(filename + ": cannot stream " + bits + " bit, "
+                                + channels + " channel, " + rate + " Hz audio");
+                    }
+                    int length = (int) Math.min(size, map.limit() - body);
+                    map.position(body);
+                    map.limit(body + length);
+                    ByteBuffer samples = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+                    return new MusicStream(samples, channels, bits / 8);
+                }
+                if (body + size > map.limit()) {
+                    throw new IOException(filename + " is damaged: a chunk runs past the end");
+                }
+                // Chunks are word aligned; the last one may leave its pad byte out
+                at = (int) Math.min(body + size + (size & 1), map.limit());
+            }
+            throw new IOException(filename + " has no audio data");
+        } finally {
+            // The mapping stays valid after the file is closed
+            file.close();
+        }
+    }
+
+    /** Length in frames */
+    public int getFrames() {
+        return frames;
+    }
+
+    /** Bytes of the file mapped for playing */
+    public long getMappedBytes() {
+        return data.capacity();
+    }
+
+    /** Starts again from the beginning; mixer thread only */
+    void rewind() {
+        position = 0;
+    }
+
+    /** Adds the next count frames, times gain, to interleaved stereo mix; mixer thread only */
+    void mixInto(float[] mix, int count, float gain) {
+        if (frames == 0) return;
+        int pos = position;
+        int stride = channels * bytesPerSample;
+        for (int f = 0; f < count; f++) {
+            int at = pos * stride;
+            float left, right;
+            if (bytesPerSample == 2) {
+                left = data.getShort(at);
+                right = channels == 2 ? data.getShort(at + 2) : left;
+            } else {
+                left = ((data.get(at) & 0xff) - 128) << 8;
+                right = channels == 2 ? ((data.get(at + 1) & 0xff) - 128) << 8 : left;
+            }
+            mix[2 * f] += left * gain;
+            mix[2 * f + 1] += right * gain;
+            if (++pos == frames) pos = 0;
+        }
+        position = pos;
+    }
+}
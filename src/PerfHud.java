@@ -0,0 +1,242 @@
+import java.awt.Color;
+import java.awt.event.KeyEvent;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runtime performance overlay: FPS, update/paint percentiles, GC, allocation rate,
+ * active audio, input latency and the engine's subsystems, with hit boxes as an optional layer and a per-frame CSV dump.
+ * F3 toggles the overlay, F4 the hit-box layer, F5 CSV recording and F6 the predicted
+ * shuttle path.
+ * When nothing is switched on the engine skips all timing, so it costs nothing.
+ */
+public class PerfHud {
+    private static final int WINDOW = 256;                    // frames kept for the percentiles
+    private static final long REFRESH_NANOS = 250000000L;     // overlay text refreshes 4x a second
+    private static final Color PANEL = new Color(0, 0, 0, 170);
+    private static final int LINE_HEIGHT = 14;
+
+    // Switched by keys handled on the simulation thread, read when painting
+    private volatile boolean visible = false;
+    private volatile boolean hitBoxes = false;
+    private volatile boolean trajectory = false;
+    private volatile PrintWriter csv;
+
+    // Ring buffers of the last WINDOW frames
+    private final long[] frameStart  = new long[WINDOW];
+    private final long[] updateNanos = new long[WINDOW];
+    private final long[] paintNanos  = new long[WINDOW];
+    private final long[] sorted      = new long[WINDOW];
+    private long frames = 0;
+
+    // Update time accumulated since the last painted frame, added to by the
+    // simulation thread when it has its own
+    private final AtomicLong pendingUpdate = new AtomicLong();
+    private final AtomicInteger pendingTicks = new AtomicInteger();
+
+    // GC and allocation counters at the last refresh
+    private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private long lastRefresh = 0;
+    private long lastPaintThread = -1, lastPaintAllocated = -1;
+    private long lastSimThread = -1, lastSimAllocated = -1;
+    private long lastGcCount = 0, lastGcTime = 0;
+    private long[] lastSubsystemNanos = new long[0];
+
+    private final String[] lines = new String[9];
+
+    /** True when the engine has to time frames */
+    public boolean isTiming() {
+        return visible || csv != null;
+    }
+
+    public boolean isVisible() { return visible; }
+    public boolean showHitBoxes() { return hitBoxes; }
+    public boolean showTrajectory() { return trajectory; }
+    public boolean isRecording() { return csv != null; }
+
+    public void setVisible(boolean visible) { this.visible = visible; }
+    public void setHitBoxes(boolean hitBoxes) { this.hitBoxes = hitBoxes; }
+    public void setTrajectory(boolean trajectory) { this.trajectory = trajectory; }
+
+    /** Handles the overlay hot keys */
+    public void keyPressed(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.VK_F3:
+                visible = !visible;
+                break;
+            case KeyEvent.VK_F4:
+                hitBoxes = !hitBoxes;
+                break;
+            case KeyEvent.VK_F5:
+                if (csv == null) startRecording();
+                else stopRecording();
+                break;
+            case KeyEvent.VK_F6:
+                trajectory = !trajectory;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** Adds the time spent on ticks since the last frame */
+    public void recordUpdate(long nanos, int ticks) {
+        pendingUpdate.addAndGet(nanos);
+        pendingTicks.addAndGet(ticks);
+    }
+
+    /** Closes a frame: start time and paint duration, plus the pending update time */
+    public void recordFrame(long startNanos, long paintTime) {
+        int i = (int) (frames % WINDOW);
+        long update = pendingUpdate.getAndSet(0);
+        int ticks = pendingTicks.getAndSet(0);
+        frameStart[i]  = startNanos;
+        updateNanos[i] = update;
+        paintNanos[i]  = paintTime;
+        PrintWriter out = csv;
+        if (out != null) {
+            out.println(frames + "," + startNanos + "," + update + "," + ticks + "," + paintTime);
+        }
+        frames++;
+    }
+
+    /** Draws the overlay in the top left corner */
+    public void draw(GameEngine engine, int activeAudio, InputQueue input, long presented, long dropped) {
+        long now = System.nanoTime();
+        if (lines[0] == null || now - lastRefresh >= REFRESH_NANOS) {
+            refresh(now, engine, activeAudio, input, presented, dropped);
+        }
+
+        engine.changeColor(PANEL);
+        engine.drawSolidRectangle(4, 4, 340, lines.length * LINE_HEIGHT + 8);
+        engine.changeColor(Color.GREEN);
+        for (int i = 0; i < lines.length; i++) {
+            engine.drawCachedText(10, 4 + (i + 1) * LINE_HEIGHT, lines[i], "Monospaced", 12);
+        }
+    }
+
+    private void refresh(long now, GameEngine engine, int activeAudio, InputQueue input, long presented, long dropped) {
+        double seconds = lastRefresh == 0 ? 0 : (now - lastRefresh) / 1e9;
+        int count = (int) Math.min(frames, WINDOW);
+
+        // FPS over the frames in the window
+        double fps = 0;
+        if (count > 1) {
+            long newest = frameStart[(int) ((frames - 1) % WINDOW)];
+            long oldest = frameStart[(int) ((frames - count) % WINDOW)];
+            if (newest > oldest) fps = (count - 1) / ((newest - oldest) / 1e9);
+        }
+        lines[0] = String.format("FPS %6.1f   frames %d", fps, frames);
+        lines[1] = "update " + percentiles(updateNanos, count);
+        lines[2] = "paint  " + percentiles(paintNanos, count);
+
+        // Collections and pause time since the last refresh
+        long gcCount = 0, gcTime = 0;
+        for (GarbageCollectorMXBean gc : gcBeans) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime  += Math.max(0, gc.getCollectionTime());
+        }
+        lines[3] = String.format("GC %d (+%d)  pause %d ms (+%d)",
+                gcCount, gcCount - lastGcCount, gcTime, gcTime - lastGcTime);
+        lastGcCount = gcCount;
+        lastGcTime  = gcTime;
+
+        // Bytes allocated per second by the thread painting and by the simulation thread; a
+        // game without one updates on the painting thread, which then counts both
+        long paintThread = Thread.currentThread().getId();
+        long painting = allocatedBytes(paintThread);
+        lines[4] = "alloc paint " + allocRate(painting, paintThread == lastPaintThread ? lastPaintAllocated : -1, seconds);
+        lastPaintThread = paintThread;
+        lastPaintAllocated = painting;
+        Thread simulation = engine.getSimulationThread();
+        if (simulation == null) {
+            lines[5] = "alloc sim   on the paint thread";
+            lastSimThread = -1;
+        } else {
+            long simThread = simulation.getId();
+            long simulating = allocatedBytes(simThread);
+            lines[5] = "alloc sim   " + allocRate(simulating, simThread == lastSimThread ? lastSimAllocated : -1, seconds);
+            lastSimThread = simThread;
+            lastSimAllocated = simulating;
+        }
+
+        lines[6] = String.format("audio %d voices  input %.1f ms (max %d)",
+                activeAudio, input.getAverageLatency(), input.getMaxLatency());
+        lines[7] = subsystems(engine.getSubsystems(), seconds);
+        lines[8] = presented > 0
+                ? "presented " + presented + "  dropped " + dropped
+                : (csv != null ? "recording CSV" : "F3 hud  F4 hit boxes  F5 csv  F6 path");
+        lastRefresh = now;
+    }
+
+    /** Each subsystem's rate and, for those the engine runs, milliseconds a second spent in it */
+    private String subsystems(GameEngine.Subsystem[] subsystems, double seconds) {
+        if (lastSubsystemNanos.length != subsystems.length) lastSubsystemNanos = new long[subsystems.length];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < subsystems.length; i++) {
+            GameEngine.Subsystem s = subsystems[i];
+            long nanos = s.getNanos();
+            line.append(i == 0 ? "" : "  ").append(s.getName()).append(' ').append(s.getRate()).append(" Hz");
+            if (s.hasTask()) {
+                double ms = seconds == 0 ? 0 : (nanos - lastSubsystemNanos[i]) / 1e6 / seconds;
+                line.append(String.format(" %.2f ms/s", ms));
+            }
+            lastSubsystemNanos[i] = nanos;
+        }
+        return line.length() == 0 ? "no subsystems" : line.toString();
+    }
+
+    private String percentiles(long[] samples, int count) {
+        if (count == 0) return "-";
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        return String.format("p50 %6.2f  p99 %6.2f  max %6.2f ms",
+                sorted[count / 2] / 1e6, sorted[Math.min(count - 1, count * 99 / 100)] / 1e6, sorted[count - 1] / 1e6);
+    }
+
+    /** Bytes a thread has allocated, or -1 if the JVM cannot tell */
+    private long allocatedBytes(long thread) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(thread);
+        }
+        return -1;
+    }
+
+    /** The allocation rate from a thread's byte count now and at the last refresh (-1 if unknown then) */
+    private static String allocRate(long allocated, long last, double seconds) {
+        if (allocated < 0) return "n/a";
+        double rate = last < 0 || seconds == 0 ? 0 : (allocated - last) / seconds;
+        return String.format("%8.1f KB/s", rate / 1024);
+    }
+
+    /** Starts dumping one line of timings per frame to perf-<time>.csv */
+    public void startRecording() {
+        String name = "perf-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv";
+        try {
+            csv = new PrintWriter(new FileWriter(name));
+            csv.println("frame,start_ns,update_ns,ticks,paint_ns");
+            System.out.println("Recording frame timings to " + name);
+        } catch (IOException e) {
+            System.out.println("Error: could not write " + name);
+            csv = null;
+        }
+    }
+
+    public void stopRecording() {
+        if (csv == null) return;
+        csv.close();
+        csv = null;
+        System.out.println("Stopped recording frame timings");
+    }
+}
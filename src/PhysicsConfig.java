@@ -0,0 +1,75 @@
+/**
+ * Tunable physics constants for the shuttle, the players and the racket bounce.
+ * A new instance holds the values the game ships with; the Monte Carlo simulator
+ * ({@link MatchSimulator}) builds variations of it to sweep a parameter grid.
+ */
+public class PhysicsConfig {
+    // Shuttle
+    public double gravity        = 800;
+    public double initSpeed      = 500;  // 初始速度
+    public double dragH          = 0.8;  // 水平阻尼
+    public double dragV          = 0.5;  // 垂直阻尼
+    public double bounceDamping  = 0.30;
+
+    // Racket hit
+    public double birdieBounceSpeed = 600;
+
+    // Players
+    public double playerSpeed    = 320;
+    public double jumpVelocity   = -300;
+    public double playerGravity  = 800;
+
+    /** Names accepted by {@link #set} */
+    public static final String[] NAMES = {
+            "gravity", "initSpeed", "dragH", "dragV", "bounceDamping",
+            "birdieBounceSpeed", "playerSpeed", "jumpVelocity", "playerGravity"
+    };
+
+    public PhysicsConfig copy() {
+        PhysicsConfig c = new PhysicsConfig();
+        c.gravity           = gravity;
+        c.initSpeed         = initSpeed;
+        c.dragH             = dragH;
+        c.dragV             = dragV;
+        c.bounceDamping     = bounceDamping;
+        c.birdieBounceSpeed = birdieBounceSpeed;
+        c.playerSpeed       = playerSpeed;
+        c.jumpVelocity      = jumpVelocity;
+        c.playerGravity     = playerGravity;
+        return c;
+    }
+
+    /** Sets a constant by name */
+    public void set(String name, double value) {
+        switch (name) {
+            case "gravity":           gravity = value;           break;
+            case "initSpeed":         initSpeed = value;         break;
+            case "dragH":             dragH = value;             break;
+            case "dragV":             dragV = value;             break;
+            case "bounceDamping":     bounceDamping = value;     break;
+            case "birdieBounceSpeed": birdieBounceSpeed = value; break;
+            case "playerSpeed":       playerSpeed = value;       break;
+            case "jumpVelocity":      jumpVelocity = value;      break;
+            case "playerGravity":     playerGravity = value;     break;
+            default:
+                throw new IllegalArgumentException("Unknown physics constant " + name);
+        }
+    }
+
+    /** Reads a constant by name */
+    public double get(String name) {
+        switch (name) {
+            case "gravity":           return gravity;
+            case "initSpeed":         return initSpeed;
+            case "dragH":             return dragH;
+            case "dragV":             return dragV;
+            case "bounceDamping":     return bounceDamping;
+            case "birdieBounceSpeed": return birdieBounceSpeed;
+            case "playerSpeed":       return playerSpeed;
+            case "jumpVelocity":      return jumpVelocity;
+            case "playerGravity":     return playerGravity;
+            default:
+                throw new IllegalArgumentException("Unknown physics constant " + name);
+        }
+    }
+}
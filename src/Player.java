@@ -1,5 +1,7 @@
 import java.awt.*;
 import java.awt.geom.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public class Player {
     public enum Action { Standing, Serving, Forward, Backward, Swing }
@@ -7,16 +9,22 @@ public class Player {
     private final GameEngine engine;
     private final String folder;
     public double x, y;           // 当前位置
+    private double prevX, prevY;  // position before the last update, for interpolation
     private final int serveDir;    // +1：left→right，-1：right→left
     private final double initialX, initialY;
 
     private double restrictedMinX, restrictedMaxX;
     private double SwingMinX,     SwingMaxX;
 
-    // Horizontal animation frame
-    private Image standing;
+    // Horizontal animation frame. The simulation thread picks the sprites up while the painting
+    // thread may be drawing, so standing is written last and volatile: once it is seen set,
+    // so are the others
+    private volatile Image standing;
     private Image[] serving, forward, backward, swing;
     private Image shadow;
+    // Sprites still loading, picked up by awaitSprites()
+    private Future<Image> standingAsset, shadowAsset;
+    private Future<Image[]> servingAsset, forwardAsset, backwardAsset, swingAsset;
     // Serve animation
     private double serveTimer = 0;
     private final double serveDuration = 0.4;
@@ -24,25 +32,61 @@ public class Player {
 
     // Swing animation
     private double swingTimer = 0;
-    private final double swingDuration = 0.3;
-    private double swingAngle = 0 ;
+    private static final double SWING_DURATION = 0.3;
+    private int swingPhase = 0;          // racket pose as of the last update, see SWING_PHASES
+    private int prevSwingPhase = 0;      // and before it, for swept hit tests
+    private double prevSwingTimer = -1;  // swing timer at the start of the last update, -1 if not swinging
+    private double hitUntil = 0;         // fraction of the last update the racket spent on the forward half
+    private int hitPhase = 0;            // racket pose getRacketAngle reports: swingPhase, or where tryHit met the birdie
+
+    // The racket through a swing, worked out once: the swing is cut into SWING_PHASES steps,
+    // one per 120 Hz tick, and each has its racket angle, the racket hit box's offset from
+    // (x, y) facing either way, and the sprite frame. Hit tests and drawing look them up.
+    private static final int SWING_PHASES = 36;
+    private static final int SWING_FRAMES = 12;
+    private static final double RACKET_LENGTH = 55;
+    private static final double RACKET_SIZE = 40;
+    private static final double[] RACKET_ANGLE = new double[SWING_PHASES + 1];
+    private static final double[][] RACKET_LEFT = new double[2][SWING_PHASES + 1];   // [0] serving right, [1] left
+    private static final double[] RACKET_TOP = new double[SWING_PHASES + 1];
+    private static final int[] SWING_FRAME = new int[SWING_PHASES + 1];
+    static {
+        for (int p = 0; p <= SWING_PHASES; p++) {
+            // The racket sweeps from 45° to 180° over the first half, and rests at 45° after it
+            double swing = p <= SWING_PHASES / 2 ? p / (SWING_PHASES / 2.0) * (180.0 - 45.0) : 0;
+            double angle = Math.toRadians(swing + 45);
+            RACKET_ANGLE[p] = swing + 45;
+            RACKET_LEFT[0][p] = 75 - Math.cos(angle) * RACKET_LENGTH - RACKET_SIZE / 2;
+            RACKET_LEFT[1][p] = 75 + Math.cos(angle) * RACKET_LENGTH - RACKET_SIZE / 2;
+            RACKET_TOP[p] = 75 - Math.sin(angle) * RACKET_LENGTH - RACKET_SIZE / 2;
+            SWING_FRAME[p] = Math.min(SWING_FRAMES - 1, p * SWING_FRAMES / SWING_PHASES);
+        }
+    }
+    // Reused by getRacketHitBox, so hit tests do not allocate
+    private final Rectangle2D.Double racketHitBox = new Rectangle2D.Double();
+    // Reused by draw(alpha), which draws the live state
+    private final Snapshot current = new Snapshot();
 
     // Jump state (parallel to Action)
     private boolean isJumping = false;
     private double baselineY;             // 地面 y 坐标
     private double vy = 0;                // 垂直速度
-    private final double JUMP_VELOCITY = -300;  // 跳得更低一点
-    private final double GRAVITY       = 800;
+    // Jump velocity, gravity and running speed
+    private final PhysicsConfig physics;
 
     // Move horizontally
-    private final double speed = 320;
     private double minX, maxX;
 
 
     private Action action = Action.Standing;
 
     public Player(GameEngine engine, String folder, double x, double y, int serveDir) {
+        this(engine, folder, x, y, serveDir, new PhysicsConfig());
+    }
+
+    public Player(GameEngine engine, String folder, double x, double y, int serveDir, PhysicsConfig physics) {
         this.engine   = engine;
+        this.physics  = physics;
         this.folder   = folder;
         this.x        = x;
         this.y        = y;
@@ -50,15 +94,58 @@ public class Player {
 
         this.initialX = x;
         this.initialY = y;
+        this.prevX    = x;
+        this.prevY    = y;
+    }
+
+    /** A player with no sprites, for simulating moves ahead (see {@link RolloutPlanner}); copyStateFrom() sets it up */
+    Player(PhysicsConfig physics, int serveDir) {
+        this(physics, 0, 0, serveDir);
+    }
+
+    /** A player with no sprites at (x, y), for games without an engine (see {@link BadmintonEnv}) */
+    Player(PhysicsConfig physics, double x, double y, int serveDir) {
+        this(null, null, x, y, serveDir, physics);
+    }
+
+    /** Copies the simulated state (position, action, swing, jump and bounds) of other, which must face the same way */
+    void copyStateFrom(Player other) {
+        x = other.x;
+        y = other.y;
+        prevX = other.prevX;
+        prevY = other.prevY;
+        action = other.action;
+        serveTimer = other.serveTimer;
+        serveFinishedFlag = other.serveFinishedFlag;
+        swingTimer = other.swingTimer;
+        swingPhase = other.swingPhase;
+        prevSwingPhase = other.prevSwingPhase;
+        prevSwingTimer = other.prevSwingTimer;
+        hitUntil = other.hitUntil;
+        hitPhase = other.hitPhase;
+        isJumping = other.isJumping;
+        baselineY = other.baselineY;
+        vy = other.vy;
+        minX = other.minX;
+        maxX = other.maxX;
     }
 
     public void init() {
-        standing = engine.loadImage(folder + "/standing.png");
-        forward  = loadFrames("forward",  8);
-        backward = loadFrames("backward", 8);
-        swing    = loadFrames("swing",   12);
-        serving  = loadFrames("serving", 8);
-        shadow = engine.loadImage("img/shadow.png");
+        // Sprites are only needed when something is drawn; they load in the background
+        if (engine != null && !engine.isHeadless()) {
+            standingAsset = engine.loadImageAsync(folder + "/standing.png");
+            forwardAsset  = loadFramesAsync("forward",  8);
+            backwardAsset = loadFramesAsync("backward", 8);
+            swingAsset    = loadFramesAsync("swing",   SWING_FRAMES);
+            servingAsset  = loadFramesAsync("serving", 8);
+            // Both players share one shadow
+            shadowAsset = engine.loadAsync("img/shadow.png@50x80", new Callable<Image>() {
+                @Override
+                public Image call() {
+                    return engine.scaledImage(engine.loadImage("img/shadow.png"), 50, 80);
+                }
+            });
+        }
 
         int mid = 800 / 2;
 
@@ -92,6 +179,29 @@ public class Player {
     public void resetPosition() {
         this.x = initialX;
         this.y = initialY;
+        this.prevX = initialX;
+        this.prevY = initialY;
+    }
+
+    /** Waits for the sprites started by init(); draw() does this itself the first time */
+    public void awaitSprites() {
+        if (standingAsset == null || standing != null) return;
+        forward  = AssetLoader.get(forwardAsset);
+        backward = AssetLoader.get(backwardAsset);
+        swing    = AssetLoader.get(swingAsset);
+        serving  = AssetLoader.get(servingAsset);
+        shadow   = AssetLoader.get(shadowAsset);
+        standing = AssetLoader.get(standingAsset);     // last, publishing the others
+    }
+
+    /** Decodes and slices a sprite sheet on the engine's loader */
+    private Future<Image[]> loadFramesAsync(final String name, final int count) {
+        return engine.loadAsync(folder + "/" + name + ".png#" + count, new Callable<Image[]>() {
+            @Override
+            public Image[] call() {
+                return loadFrames(name, count);
+            }
+        });
     }
 
     private Image[] loadFrames(String name, int count) {
@@ -127,14 +237,19 @@ public class Player {
     public void jump() {
         if (!isJumping && y == baselineY) {
             isJumping = true;
-            vy        = JUMP_VELOCITY;
+            vy        = physics.jumpVelocity;
         }
     }
 
     public void update(double dt) {
+        prevX = x;
+        prevY = y;
+        prevSwingPhase = swingPhase;
+        prevSwingTimer = action == Action.Swing ? swingTimer : -1;
+
         // —— Vertical physics (jumping/falling) ——
         if (isJumping) {
-            vy += GRAVITY * dt;
+            vy += physics.playerGravity * dt;
             y  += vy * dt;
             if (y >= baselineY) {
                 y          = baselineY;
@@ -144,8 +259,8 @@ public class Player {
         }
 
         // —— Horizontal movement ——
-        if (action == Action.Forward)  x += speed * dt;
-        if (action == Action.Backward) x -= speed * dt;
+        if (action == Action.Forward)  x += physics.playerSpeed * dt;
+        if (action == Action.Backward) x -= physics.playerSpeed * dt;
         x = Math.max(minX, Math.min(maxX, x));
 
         // —— Serve animation ——
@@ -161,11 +276,25 @@ public class Player {
         // —— Swing animation ——
         if (action == Action.Swing) {
             swingTimer += dt;
-            if (swingTimer >= swingDuration) {
+            if (swingTimer >= SWING_DURATION) {
                 action      = Action.Standing;
                 swingTimer  = 0;
             }
         }
+
+        // —— Racket pose (read by getRacketHitBox/tryHit, so it lives here and not in draw) ——
+        if (action == Action.Swing) swingPhase = phaseOf(swingTimer);
+        hitPhase = swingPhase;
+
+        // —— Hitting window: the whole tick, or the part of it before the swing passed its forward half ——
+        if (prevSwingTimer < 0 || prevSwingTimer > SWING_DURATION/2) hitUntil = 0;
+        else if (prevSwingTimer + dt <= SWING_DURATION/2) hitUntil = 1;
+        else hitUntil = (SWING_DURATION/2 - prevSwingTimer) / dt;
+    }
+
+    /** The swing phase nearest a swing timer */
+    private static int phaseOf(double timer) {
+        return Math.min(SWING_PHASES, (int) Math.round(timer / SWING_DURATION * SWING_PHASES));
     }
 
     public boolean consumeServeFinished() {
@@ -174,37 +303,127 @@ public class Player {
         return true;
     }
 
+    /** The racket hit box for the current swing phase; the same instance is updated on every call */
     public Rectangle2D getRacketHitBox() {
-        // 计算帧左上角：人物中心底部为 (x, y)，向上 FRAME 像素
-        int w = 40;
-        int h = 40;
-
-        double centralX = 75 + x;
-        double centralY = 75 + y;
-        double racketAngle = swingAngle + 45;
-        double racketLength = 55;
-        double left, top;
-        if (serveDir == 1){
-            left = centralX - Math.cos(Math.toRadians(racketAngle)) * racketLength - w/2;
-            top = centralY - Math.sin(Math.toRadians(racketAngle))  * racketLength - h/2;
-        }else{
-            left = centralX + Math.cos(Math.toRadians(racketAngle)) * racketLength - w/2;
-            top = centralY - Math.sin(Math.toRadians(racketAngle))  * racketLength - h/2;
-        }
-        return new Rectangle2D.Double(left ,top , w, h);
+        // The racket is RACKET_LENGTH from the body's centre (75, 75 from the frame's corner)
+        racketHitBox.setRect(x + RACKET_LEFT[serveDir == 1 ? 0 : 1][swingPhase], y + RACKET_TOP[swingPhase],
+                RACKET_SIZE, RACKET_SIZE);
+        return racketHitBox;
     }
 
 
-    /** Can swing the racket to hit the ball either in the air or on the ground */
+    /** The racket only hits on the forward half of the swing */
+    public boolean isHitting() {
+        return action == Action.Swing && swingTimer <= SWING_DURATION/2;
+    }
+
+    /**
+     * Can swing the racket to hit the ball either in the air or on the ground. A birdie that
+     * went through the racket during the tick is moved back to where the two met (see
+     * {@link #hitTime}).
+     */
     public boolean tryHit(Birdie b) {
-        if (action!=Action.Swing || swingTimer> swingDuration/2) return false;
-        return getRacketHitBox().intersects(b.getHitBox());
+        double t = hitTime(b);
+        if (t < 0) return false;
+        // Bounce off the racket as it was at contact: the swing timer runs on through the tick from
+        // its start to where the racket stopped hitting (the end of the tick or of the forward half)
+        double until = hitUntil < 1 ? SWING_DURATION/2 : swingTimer;
+        hitPhase = phaseOf(prevSwingTimer + (until - prevSwingTimer) * t / hitUntil);
+        b.x = b.prevX + (b.x - b.prevX) * t;
+        b.y = b.prevY + (b.y - b.prevY) * t;
+        return true;
+    }
+
+    /**
+     * Whether the racket hit the birdie in the last tick: 1 if the two overlap now, otherwise
+     * the fraction of the tick (0..1) at which they met, or -1 if they did not. For that the
+     * racket box and the birdie box are both swept from where they were at the start of the
+     * tick, so a fast shuttle cannot pass through the racket between two ticks, however long
+     * they are. A birdie that was already on the racket and got away is not hit again. When
+     * the swing passed the end of its forward half during the tick, only the part of the tick
+     * before that is swept, with the racket at the end of the forward half.
+     */
+    public double hitTime(Birdie b) {
+        if (hitUntil <= 0) return -1;
+        int facing = serveDir == 1 ? 0 : 1;
+        Rectangle2D box = b.getHitBox();
+        double size = box.getWidth();
+        double u = hitUntil;
+        int phase = u < 1 ? SWING_PHASES / 2 : swingPhase;
+
+        // Gap from the racket's corner to the birdie's corner where the racket stopped hitting
+        // (the end of the tick, or u of the way through it) and at the start of the tick; they
+        // overlap while it is within (-size, RACKET_SIZE) on both axes
+        double gx1 = box.getX() - (b.x - b.prevX) * (1 - u) - (prevX + (x - prevX) * u + RACKET_LEFT[facing][phase]);
+        double gy1 = box.getY() - (b.y - b.prevY) * (1 - u) - (prevY + (y - prevY) * u + RACKET_TOP[phase]);
+        if (u == 1 && gx1 > -size && gx1 < RACKET_SIZE && gy1 > -size && gy1 < RACKET_SIZE) return 1;
+        double gx0 = box.getX() - (b.x - b.prevX) - (prevX + RACKET_LEFT[facing][prevSwingPhase]);
+        double gy0 = box.getY() - (b.y - b.prevY) - (prevY + RACKET_TOP[prevSwingPhase]);
+        if (gx0 > -size && gx0 < RACKET_SIZE && gy0 > -size && gy0 < RACKET_SIZE) return -1;
+
+        double enter = Math.max(0, Math.max(entering(gx0, gx1 - gx0, -size, RACKET_SIZE),
+                entering(gy0, gy1 - gy0, -size, RACKET_SIZE)));
+        double exit = Math.min(1, Math.min(leaving(gx0, gx1 - gx0, -size, RACKET_SIZE),
+                leaving(gy0, gy1 - gy0, -size, RACKET_SIZE)));
+        return enter < exit ? enter * u : -1;
+    }
+
+    /** When a gap g0 + dg·t comes into (lo, hi) */
+    private static double entering(double g0, double dg, double lo, double hi) {
+        if (dg == 0) return g0 > lo && g0 < hi ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        return Math.min((lo - g0) / dg, (hi - g0) / dg);
+    }
+
+    /** When a gap g0 + dg·t goes out of (lo, hi) */
+    private static double leaving(double g0, double dg, double lo, double hi) {
+        if (dg == 0) return g0 > lo && g0 < hi ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        return Math.max((lo - g0) / dg, (hi - g0) / dg);
+    }
+
+    /** What draw() needs of a player, copied out of the simulation so it can be drawn on another thread */
+    public static final class Snapshot {
+        double x, y, prevX, prevY;
+        Action action = Action.Standing;
+        int swingPhase;
+        double serveTimer;
+        final Rectangle2D.Double racketHitBox = new Rectangle2D.Double();
+
+        public Rectangle2D getRacketHitBox() { return racketHitBox; }
+    }
+
+    /** Copies the state draw() uses into snapshot */
+    public void capture(Snapshot snapshot) {
+        snapshot.x = x;
+        snapshot.y = y;
+        snapshot.prevX = prevX;
+        snapshot.prevY = prevY;
+        snapshot.action = action;
+        snapshot.swingPhase = phaseOf(swingTimer);
+        snapshot.serveTimer = serveTimer;
+        snapshot.racketHitBox.setRect(getRacketHitBox());
     }
 
     public void draw() {
+        draw(1.0);
+    }
+
+    /** Draw at alpha (0..1) of the way from the previous to the current position */
+    public void draw(double alpha) {
+        capture(current);
+        draw(current, alpha);
+    }
+
+    /** Draw a snapshot of this player at alpha (0..1) of the way from its previous to its current position */
+    public void draw(Snapshot s, double alpha) {
         Image frame = standing;
+        if (frame == null) {
+            awaitSprites();
+            frame = standing;
+        }
+        int drawX = (int)(s.prevX + (s.x - s.prevX) * alpha);
+        int drawY = (int)(s.prevY + (s.y - s.prevY) * alpha);
 
-        switch (action) {
+        switch (s.action) {
             case Forward:
                 frame = forward[(int)((System.currentTimeMillis()/60) % forward.length)];
                 break;
@@ -212,16 +431,10 @@ public class Player {
                 frame = backward[(int)((System.currentTimeMillis()/60) % backward.length)];
                 break;
             case Swing:
-                int si = (int)((swingTimer / swingDuration) * swing.length);
-                if (si < swing.length) frame = swing[si];
-                if (swingTimer <= swingDuration/2) {
-                    swingAngle =  swingTimer / (swingDuration / 2) * (180.0 - 45.0) ;
-                }else {
-                    swingAngle = 0;
-                }
+                frame = swing[SWING_FRAME[s.swingPhase]];
                 break;
             case Serving:
-                int pi = (int)((serveTimer / serveDuration) * serving.length);
+                int pi = (int)((s.serveTimer / serveDuration) * serving.length);
                 if (pi < serving.length) frame = serving[pi];
                 break;
             default:
@@ -229,16 +442,21 @@ public class Player {
         }
 
         // Draw shadow
-        if ( y == initialY ){
-            if (serveDir == 1) engine.drawImage(shadow, (int)x + 49, (int)y + 60 , 50, 80);
-            else engine.drawImage(shadow, (int)x + 56, (int)y + 60 , 50, 80);
+        if ( s.y == initialY ){
+            if (serveDir == 1) engine.drawImage(shadow, drawX + 49, drawY + 60);
+            else engine.drawImage(shadow, drawX + 56, drawY + 60);
         }
 
-        engine.drawImage(frame, (int)x, (int)y, 150, 150);
+        engine.drawImage(frame, drawX, drawY, 150, 150);
+    }
+
+    /** Where draw(s, alpha) draws: the sprite's box, which holds the shadow too */
+    public void drawBounds(Snapshot s, double alpha, Rectangle out) {
+        out.setBounds((int)(s.prevX + (s.x - s.prevX) * alpha), (int)(s.prevY + (s.y - s.prevY) * alpha), 150, 150);
     }
 
     public int getServeDir() { return serveDir; }
     public Action getAction() { return action; }
-    public double getRacketAngle() { return swingAngle + 45; }
+    public double getRacketAngle() { return RACKET_ANGLE[hitPhase]; }
     public void setServeFinished(boolean serveFinishedFlag) {this.serveFinishedFlag = serveFinishedFlag;}
 }
@@ -0,0 +1,470 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The hard robot: decides where to stand and when to swing by playing the candidates
+ * forward. Each candidate is a place to walk to and a tick to start the swing; a rollout
+ * runs a sprite-less copy of the robot through that plan against the predicted path of
+ * the shuttle, and if the racket meets it, flies the return with a copy of the birdie and
+ * scores how hard it is for the opponent to reach. The best candidate is then followed
+ * tick by tick.
+ *
+ * Candidates walking to the same place are the same until their swings start, so they are
+ * played together: one copy walks there, and a second branches off at every swing tick.
+ * A search runs once per flight, on the game thread and on a few workers taking places
+ * from a shared counter. It is anytime: with a budget, every thread stops at the deadline
+ * and the best candidate found so far is played for a tick, then the search starts again
+ * from where the robot is. The game thread sleeps until the workers report, and not past
+ * the budget: a worker the OS has not run in time is left out of that search rather than
+ * waited for. Such a worker may still be playing a place when the next search starts, so
+ * a search's root and path are kept per round, in two sets used in turn, and the counter
+ * is tagged with its round so a late worker takes no place of a newer one.
+ *
+ * With no budget the search is exhaustive, and since each place is played whole by one
+ * thread, what it finds does not depend on the workers or the timing: it is deterministic,
+ * like the rest of a headless match. Searching never allocates.
+ */
+public class RolloutPlanner {
+    /**
+     * Searching's share of a 60 Hz frame in play; a game running several ticks a frame gives
+     * each tick its part of it, since a search that is cut short runs again on the next tick
+     */
+    public static final long DEFAULT_BUDGET_NANOS = 2000000;
+    // Part of the budget kept for a running worker to finish the place it has in hand and
+    // report; a place takes some tens of microseconds
+    private static final long REPORT_NANOS = 200000;
+
+    private static final double NET_X = 400;
+    private static final double GROUND_Y = 470;
+
+    // Places: the shuttle's x where it comes down to the racket, less the offset that puts
+    // it in front of the body, plus or minus up to POSITIONS steps
+    private static final int POSITIONS = 20;
+    private static final double POSITION_STEP = 4;
+    private static final double BODY_OFFSET = 75;
+    // The racket box (40 px, 55 px from the body's centre) cannot touch a shuttle (30 px)
+    // further than this from the centre, either way, plus what the body moves in a tick
+    private static final double RACKET_REACH = 55 + 20 + 15;
+    // How far (px) an opponent can reach from where it stands, left or right of the shuttle
+    private static final double OPPONENT_REACH = 40;
+    // Returns remembered per path point, for that many racket angles and points of contact
+    private static final int CACHE_SLOTS = 8;
+
+    private static final double MISS = -2000;          // the racket never meets the shuttle
+    private static final double LOST = -1000;          // the return comes down on our side
+
+    private final PhysicsConfig physics;
+    private final int dir;                             // serve direction of the robot
+    private final double hitSpread;                    // random extra speed of its hits, 0..spread
+    private final long budget;
+
+    // The roots of the last two rounds, round r's being roots[r & 1]
+    private final Root[] roots = { new Root(), new Root() };
+
+    // Shared by the threads of a round: the round in the high half of next, and the next
+    // place to play in the low half
+    private final AtomicLong next = new AtomicLong();
+    private volatile int round = 0;
+    private volatile Thread searcher;                  // the thread waiting for the workers
+
+    private final Worker caller;
+    private final Worker[] workers;
+
+    // The plan being followed
+    private long plannedFlight = -1;
+    private boolean cut = false;
+    private boolean hits = false;
+    private int planSwing;
+    private double planPlace;
+    private int planTick;
+
+    // Totals, for reports
+    private long searches, cutSearches, rollouts, searchNanos;
+
+    /**
+     * A planner for a robot facing dir whose hits are 1 + rand(hitSpread) times the bounce
+     * speed, searching on the calling thread and workers more; budgetNanos 0 searches exhaustively
+     */
+    public RolloutPlanner(PhysicsConfig physics, int dir, double hitSpread, int workers, long budgetNanos) {
+        this.physics = physics;
+        this.dir = dir;
+        this.hitSpread = hitSpread;
+        this.budget = budgetNanos;
+        caller = new Worker();
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            Worker w = new Worker();
+            w.thread = new Thread(w, "RolloutPlanner-" + i);
+            w.thread.setDaemon(true);
+            w.thread.start();
+            this.workers[i] = w;
+        }
+    }
+
+    /**
+     * Sets the robot's action for this tick; call once per tick after the players have moved
+     * and before the shuttle does. Returns false, leaving the action alone, when there is no
+     * plan: the shuttle is not coming down on the robot's side or no candidate reaches it.
+     */
+    public boolean drive(Player player, Player opponent, Birdie birdie, TrajectoryPredictor predictor, double dt) {
+        if (!birdie.isInPlay() || !predictor.hasFlight()) {
+            plannedFlight = -1;
+            return false;
+        }
+        if (cut || dt != roots[round & 1].dt || predictor.getPredictions() != plannedFlight) {
+            plannedFlight = predictor.getPredictions();
+            search(player, opponent, birdie, predictor, dt);
+        }
+        if (!hits) return false;
+        act(player, planTick++, planSwing, planPlace, physics.playerSpeed * dt);
+        return true;
+    }
+
+    /** What a plan does on tick t: walk to place, start the swing on tick swing, then stand */
+    private static void act(Player p, int t, int swing, double place, double step) {
+        if (p.getAction() == Player.Action.Swing) return;
+        if (t == swing) {
+            p.setAction(Player.Action.Swing);
+        } else if (t < swing && place - p.x > step / 2) {
+            p.setAction(Player.Action.Forward);
+        } else if (t < swing && p.x - place > step / 2) {
+            p.setAction(Player.Action.Backward);
+        } else {
+            p.setAction(Player.Action.Standing);
+        }
+    }
+
+    private void search(Player player, Player opponent, Birdie birdie, TrajectoryPredictor predictor, double dt) {
+        long start = System.nanoTime();
+        long end = start + budget;
+        int r = round + 1;
+        searcher = Thread.currentThread();
+
+        // Round r - 2 used this root last; a worker left out of it may still be playing a place
+        while (playing(r - 2)) LockSupport.park(this);
+        Root root = roots[r & 1];
+        root.deadline = end - Math.min(REPORT_NANOS, budget / 4);
+        root.dt = dt;
+        root.swingTicks = (int) Math.ceil(0.15 / dt) + 1;
+        root.bodyReach = RACKET_REACH + (physics.playerSpeed + Math.abs(physics.jumpVelocity)) * dt;
+        root.shuttle.copyStateFrom(birdie);
+        root.robot.copyStateFrom(player);
+        root.opponentX = opponent.x;
+        root.opponentY = opponent.y;
+        root.pathLength = predictor.remaining();
+        for (int i = 0; i < root.pathLength; i++) {
+            root.pathX[i] = predictor.pathX(i);
+            root.pathY[i] = predictor.pathY(i);
+            root.pathVY[i] = predictor.pathVY(i);
+        }
+        root.chooseCandidates(player);
+
+        // Run the round on every thread, then sleep until the last worker to report wakes
+        // this thread, or with a budget, until the budget is spent
+        next.set((long) r << 32);
+        round = r;
+        for (Worker w : workers) LockSupport.unpark(w.thread);
+        caller.search(r);
+        while (!reported(r)) {
+            if (budget == 0) {
+                LockSupport.park(this);
+            } else {
+                long left = end - System.nanoTime();
+                if (left <= 0) break;
+                LockSupport.parkNanos(this, left);
+            }
+        }
+
+        // Best score, then the earliest place, whichever thread found it; a worker that has
+        // not reported is still searching and is left out, and the search counts as cut
+        Worker best = caller;
+        int played = caller.places;
+        long done = caller.rollouts;
+        for (Worker w : workers) {
+            if (w.reported != r) continue;
+            played += w.places;
+            done += w.rollouts;
+            if (w.bestScore > best.bestScore || (w.bestScore == best.bestScore && w.bestPlace < best.bestPlace)) best = w;
+        }
+        cut = played < root.placeCount;
+        hits = best.bestPlace >= 0 && best.bestScore > MISS;
+        if (hits) {
+            planSwing = best.bestSwing;
+            planPlace = root.places[best.bestPlace];
+        }
+        planTick = 0;
+
+        searches++;
+        if (cut) cutSearches++;
+        rollouts += done;
+        searchNanos += System.nanoTime() - start;
+    }
+
+    /** True once every worker has finished round r */
+    private boolean reported(int r) {
+        for (Worker w : workers) {
+            if (w.reported != r) return false;
+        }
+        return true;
+    }
+
+    /** True while a worker is still in round r or an earlier one */
+    private boolean playing(int r) {
+        for (Worker w : workers) {
+            if (w.working <= r && w.reported != w.working) return true;
+        }
+        return false;
+    }
+
+    /** Place p of round r, if it has not been taken yet and the round is still the newest */
+    private int take(int r, int placeCount) {
+        while (true) {
+            long n = next.get();
+            int p = (int) n;
+            if ((int) (n >>> 32) != r || p >= placeCount) return -1;
+            if (next.compareAndSet(n, n + 1)) return p;
+        }
+    }
+
+    /** Number of searches run, and of those the budget cut short */
+    public long getSearches() {
+        return searches;
+    }
+
+    public long getCutSearches() {
+        return cutSearches;
+    }
+
+    /** Rollouts (candidates played), over all searches */
+    public long getRollouts() {
+        return rollouts;
+    }
+
+    /** Average wall time of a search, in microseconds */
+    public double getAverageSearchMicros() {
+        return searches == 0 ? 0 : searchNanos / 1e3 / searches;
+    }
+
+    /** Where a round searches from, written by the game thread before the round starts */
+    private final class Root {
+        final Birdie shuttle = new Birdie(physics);
+        final Player robot = new Player(physics, dir);
+        double opponentX, opponentY;
+        double dt;
+        int swingTicks;                                // ticks a swing can hit for
+        double bodyReach;                              // RACKET_REACH and a tick's movement
+        final double[] pathX = new double[TrajectoryPredictor.HORIZON + 1];
+        final double[] pathY = new double[TrajectoryPredictor.HORIZON + 1];
+        final double[] pathVY = new double[TrajectoryPredictor.HORIZON + 1];
+        int pathLength;
+        final double[] places = new double[2 * POSITIONS + 1];
+        int placeCount;
+        int firstSwing, lastSwing;
+        long deadline;                                 // when the threads stop taking places
+
+        /**
+         * Swings from a swing's length before the shuttle comes down to the top of the racket's
+         * reach until it lands, and places nearest the natural one first, so that a search cut
+         * short has tried the likely ones
+         */
+        void chooseCandidates(Player player) {
+            placeCount = 0;
+            int enter = -1, land = pathLength - 1;
+            for (int i = 1; i < pathLength; i++) {
+                boolean onSide = dir > 0 ? pathX[i] < NET_X : pathX[i] > NET_X;
+                if (enter < 0 && onSide && pathY[i] >= player.y - 15 && pathVY[i] >= 0) enter = i;
+                if (pathY[i] >= GROUND_Y) {
+                    land = i;
+                    break;
+                }
+            }
+            if (enter < 0) return;
+
+            firstSwing = Math.max(0, enter - swingTicks - 1);
+            lastSwing = land - 1;
+            double natural = pathX[enter] - BODY_OFFSET;
+            for (int k = 0; k < places.length; k++) {
+                places[placeCount++] = natural + POSITION_STEP * ((k & 1) == 0 ? k / 2 : -(k + 1) / 2);
+            }
+        }
+    }
+
+    /** One searching thread, with its own copies of the robot and the shuttle */
+    private final class Worker implements Runnable {
+        final Player walker = new Player(physics, dir);
+        final Player swinger = new Player(physics, dir);
+        final Birdie shuttle = new Birdie(physics);
+        Thread thread;
+
+        // This thread's share of a round, read by the game thread once it has reported
+        double bestScore;
+        int bestPlace, bestSwing;
+        int places;
+        long rollouts;
+        volatile int working, reported;                // the round taken up, and the last one done
+        Root root;                                     // working's
+
+        // Many candidates meet the shuttle at the same point with the racket at the same
+        // angle, so the score of each such hit is worked out once a search
+        final int[] cacheSearch = new int[TrajectoryPredictor.HORIZON + 1];
+        final int[] cacheCount = new int[TrajectoryPredictor.HORIZON + 1];
+        final double[] cacheAngle = new double[(TrajectoryPredictor.HORIZON + 1) * CACHE_SLOTS];
+        final double[] cacheX = new double[(TrajectoryPredictor.HORIZON + 1) * CACHE_SLOTS];
+        final double[] cacheY = new double[(TrajectoryPredictor.HORIZON + 1) * CACHE_SLOTS];
+        final double[] cacheScore = new double[(TrajectoryPredictor.HORIZON + 1) * CACHE_SLOTS];
+        int searched = 0;
+
+        @Override
+        public void run() {
+            int seen = 0;
+            while (true) {
+                while (round == seen) LockSupport.park(this);
+                seen = round;
+                working = seen;
+                search(seen);
+                reported = seen;
+                // The last to report wakes the game thread, as does a late one it may be waiting for
+                if (reported(seen) || seen != round) LockSupport.unpark(searcher);
+            }
+        }
+
+        /** This thread's part of round r; a worker stops early if the game thread has moved on */
+        void search(int r) {
+            root = roots[r & 1];
+            bestScore = Double.NEGATIVE_INFINITY;
+            bestPlace = -1;
+            places = 0;
+            rollouts = 0;
+            searched++;
+            while (budget == 0 || System.nanoTime() < root.deadline) {
+                int p = take(r, root.placeCount);
+                if (p < 0) break;
+                playPlace(p);
+                places++;
+            }
+        }
+
+        /**
+         * Plays every swing tick for place p from the root: the walker goes there, and on each
+         * swing tick the swinger takes over from it for the length of a swing
+         */
+        void playPlace(int p) {
+            Root root = this.root;
+            double dt = root.dt;
+            double place = root.places[p];
+            double step = physics.playerSpeed * dt;
+            walker.copyStateFrom(root.robot);
+
+            // The shuttle is still in play, and so hittable, up to the second to last point
+            int firstSwing = root.firstSwing;
+            int end = Math.min(root.lastSwing, root.pathLength - 3);
+            for (int t = 0; t <= end; t++) {
+                if (t > 0) walker.update(dt);
+                if (t >= firstSwing) offer(p, t, swing(t, place, step));
+
+                // A swing already going at the root that hits does so for every later swing tick
+                act(walker, t, Integer.MAX_VALUE, place, step);
+                moveShuttle(t);
+                if (near(walker) && walker.tryHit(shuttle)) {
+                    double score = score(walker, t + 1);
+                    for (int s = Math.max(t + 1, firstSwing); s <= end; s++) offer(p, s, score);
+                    return;
+                }
+            }
+        }
+
+        /** The candidate swinging on tick s, the walker having got this far */
+        double swing(int s, double place, double step) {
+            Root root = this.root;
+            swinger.copyStateFrom(walker);
+            for (int t = s; t + 1 < root.pathLength - 1 && t <= s + root.swingTicks; t++) {
+                if (t > s) swinger.update(root.dt);
+                act(swinger, t, s, place, step);
+                moveShuttle(t);
+                if (near(swinger) && swinger.tryHit(shuttle)) return score(swinger, t + 1);
+            }
+            return MISS;
+        }
+
+        /** The shuttle's move in tick t, for tryHit to sweep */
+        void moveShuttle(int t) {
+            shuttle.prevX = root.pathX[t];
+            shuttle.prevY = root.pathY[t];
+            shuttle.x = root.pathX[t + 1];
+            shuttle.y = root.pathY[t + 1];
+        }
+
+        /** False when the shuttle stays out of the player's reach all tick, which saves a tryHit */
+        boolean near(Player player) {
+            double cx = player.x + BODY_OFFSET, cy = player.y + BODY_OFFSET;
+            double bodyReach = root.bodyReach;
+            return Math.min(shuttle.x, shuttle.prevX) < cx + bodyReach && Math.max(shuttle.x, shuttle.prevX) > cx - bodyReach
+                    && Math.min(shuttle.y, shuttle.prevY) < cy + bodyReach && Math.max(shuttle.y, shuttle.prevY) > cy - bodyReach;
+        }
+
+        /** Keeps the best candidate, the earliest swing of the earliest place on a tie */
+        void offer(int p, int s, double score) {
+            rollouts++;
+            if (score > bestScore) {
+                bestScore = score;
+                bestPlace = p;
+                bestSwing = s;
+            }
+        }
+
+        /**
+         * The worse of the slowest and the fastest return from a hit by player at path point i,
+         * the shuttle being where tryHit left it
+         */
+        double score(Player player, int i) {
+            double degrees = player.getRacketAngle();
+            double x = shuttle.x, y = shuttle.y;
+            if (cacheSearch[i] != searched) {
+                cacheSearch[i] = searched;
+                cacheCount[i] = 0;
+            }
+            int base = i * CACHE_SLOTS;
+            for (int j = 0; j < cacheCount[i]; j++) {
+                if (cacheAngle[base + j] == degrees && cacheX[base + j] == x && cacheY[base + j] == y) {
+                    return cacheScore[base + j];
+                }
+            }
+
+            double angle = Math.toRadians(degrees);
+            double score = fly(x, y, angle, physics.birdieBounceSpeed);
+            if (score > LOST) score = Math.min(score, fly(x, y, angle, physics.birdieBounceSpeed * (1 + hitSpread)));
+            if (cacheCount[i] < CACHE_SLOTS) {
+                cacheAngle[base + cacheCount[i]] = degrees;
+                cacheX[base + cacheCount[i]] = x;
+                cacheY[base + cacheCount[i]] = y;
+                cacheScore[base + cacheCount[i]] = score;
+                cacheCount[i]++;
+            }
+            return score;
+        }
+
+        /**
+         * Flies the return until it comes down to the opponent's racket height; the score is
+         * how many seconds later than the shuttle the opponent gets there, walking
+         */
+        double fly(double x, double y, double angle, double speed) {
+            shuttle.copyStateFrom(root.shuttle);
+            shuttle.x = x;
+            shuttle.y = y;
+            shuttle.vx = dir * Math.sin(angle) * speed;
+            shuttle.vy = -Math.cos(angle / 2) * speed;
+            double dt = root.dt;
+            double hitY = root.opponentY + 60;
+            for (int t = 1; t <= TrajectoryPredictor.HORIZON && shuttle.isInPlay(); t++) {
+                shuttle.update(dt);
+                boolean theirSide = dir > 0 ? shuttle.x > NET_X : shuttle.x < NET_X;
+                if (theirSide && shuttle.y >= hitY && shuttle.vy >= 0) {
+                    double walk = Math.max(0, Math.abs(shuttle.x - BODY_OFFSET - root.opponentX) - OPPONENT_REACH);
+                    return walk / physics.playerSpeed - t * dt;
+                }
+                if (shuttle.y >= GROUND_Y) return theirSide ? 0 : LOST;
+            }
+            return LOST;
+        }
+    }
+}
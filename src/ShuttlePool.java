@@ -0,0 +1,192 @@
+/**
+ * Many shuttles at once for the drill mode, stored struct-of-arrays in primitive arrays.
+ * Live shuttles are packed into [0, count) so the update is one straight loop over
+ * plain doubles: no objects, no pointer chasing and no per-frame allocation.
+ * Racket tests go through a uniform grid broadphase that is rebuilt after every update.
+ *
+ * Follows the same model as {@link Birdie#update}: drag, gravity, wall bounce, the
+ * net zone and a short slide on the ground before a shuttle is retired.
+ */
+public class ShuttlePool {
+    public static final int SIZE = 30;                       // hit box edge, as Birdie
+
+    private static final double GROUND_Y = 470;
+    private static final double WIDTH = 800;
+    private static final double GROUND_SLIDE_DURATION = 0.5;
+    private static final double NET_LEFT = 375, NET_RIGHT = 425, NET_TOP = 400;
+
+    // Broadphase: 64 px cells over the 800x500 court
+    private static final int CELL = 64;
+    private static final int GRID_W = (800 + CELL - 1) / CELL;
+    private static final int GRID_H = (500 + CELL - 1) / CELL;
+
+    private final PhysicsConfig physics;
+
+    // Shuttle state, live entries packed in [0, count)
+    final double[] x, y, vx, vy, groundTimer;
+    private int count = 0;
+
+    // Shuttles retired on each half since the pool was created
+    private long landedLeft = 0, landedRight = 0;
+
+    // Grid cells as a counting sort: shuttles of cell c are cellItems[cellStart[c] .. cellStart[c+1])
+    private final int[] cellStart = new int[GRID_W * GRID_H + 1];
+    private final int[] cellFill  = new int[GRID_W * GRID_H];
+    private final int[] cellOf;
+    private final int[] cellItems;
+
+    public ShuttlePool(int capacity, PhysicsConfig physics) {
+        this.physics = physics;
+        x  = new double[capacity];
+        y  = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        groundTimer = new double[capacity];
+        cellOf    = new int[capacity];
+        cellItems = new int[capacity];
+    }
+
+    public int capacity() { return x.length; }
+    public int count() { return count; }
+    public long getLandedLeft() { return landedLeft; }
+    public long getLandedRight() { return landedRight; }
+
+    /** Launches a shuttle, returning false if the pool is full */
+    public boolean spawn(double px, double py, double pvx, double pvy) {
+        if (count == x.length) return false;
+        x[count]  = px;
+        y[count]  = py;
+        vx[count] = pvx;
+        vy[count] = pvy;
+        groundTimer[count] = 0;
+        count++;
+        return true;
+    }
+
+    public void clear() {
+        count = 0;
+        rebuildGrid();
+    }
+
+    /** Advances every shuttle by dt, retires the ones that finished sliding and rebuilds the grid */
+    public void update(double dt) {
+        final int n = count;
+        final double[] px = x, py = y, pvx = vx, pvy = vy, pg = groundTimer;
+        final double gravity = physics.gravity * dt;
+        final double dragH = Math.max(0, 1 - physics.dragH * dt);
+        final double dragV = Math.max(0, 1 - physics.dragV * dt);
+        final double damping = physics.bounceDamping;
+
+        // Integrate: straight-line over the arrays, selects instead of control flow where possible
+        for (int i = 0; i < n; i++) {
+            double sx = px[i] + pvx[i] * dt;
+            double sy = py[i] + pvy[i] * dt;
+            double svx = pvx[i];
+            double svy = pvy[i];
+
+            if (sy >= GROUND_Y) {
+                // Sliding on the ground
+                sy  = GROUND_Y;
+                svy = 0;
+                svx *= 0.5;
+                pg[i] += dt;
+            } else {
+                // Left and right walls
+                boolean wall = sx < 0 || sx > WIDTH;
+                sx  = sx < 0 ? 0 : (sx > WIDTH ? WIDTH : sx);
+                svx = wall ? -svx * damping : svx;
+
+                // Net zone kills horizontal speed
+                boolean net = sx < NET_RIGHT && sx > NET_LEFT && sy > NET_TOP;
+                svx = net ? -svx * 0.01 : svx;
+
+                svy = (svy + gravity) * dragV;
+                svx *= dragH;
+                pg[i] = 0;
+            }
+
+            px[i] = sx;
+            py[i] = sy;
+            pvx[i] = svx;
+            pvy[i] = svy;
+        }
+
+        // Retire finished shuttles by moving the last live one into their slot
+        for (int i = 0; i < count; ) {
+            if (pg[i] >= GROUND_SLIDE_DURATION) {
+                if (px[i] < WIDTH / 2) landedLeft++;
+                else landedRight++;
+                int last = --count;
+                px[i] = px[last];
+                py[i] = py[last];
+                pvx[i] = pvx[last];
+                pvy[i] = pvy[last];
+                pg[i] = pg[last];
+            } else {
+                i++;
+            }
+        }
+
+        rebuildGrid();
+    }
+
+    private static int cellX(double px) {
+        int c = (int) (px / CELL);
+        return c < 0 ? 0 : (c >= GRID_W ? GRID_W - 1 : c);
+    }
+
+    private static int cellY(double py) {
+        int c = (int) (py / CELL);
+        return c < 0 ? 0 : (c >= GRID_H ? GRID_H - 1 : c);
+    }
+
+    /** Buckets each shuttle centre into its cell with a two-pass counting sort */
+    private void rebuildGrid() {
+        java.util.Arrays.fill(cellStart, 0);
+        for (int i = 0; i < count; i++) {
+            int c = cellY(y[i]) * GRID_W + cellX(x[i]);
+            cellOf[i] = c;
+            cellStart[c + 1]++;
+        }
+        for (int c = 0; c < GRID_W * GRID_H; c++) {
+            cellStart[c + 1] += cellStart[c];
+            cellFill[c] = cellStart[c];
+        }
+        for (int i = 0; i < count; i++) {
+            cellItems[cellFill[cellOf[i]]++] = i;
+        }
+    }
+
+    /**
+     * Collects the shuttles whose hit box overlaps the box (left, top, w, h) into out,
+     * returning how many were found (at most out.length).
+     */
+    public int query(double left, double top, double w, double h, int[] out) {
+        // Centres can be half a shuttle outside the box and still overlap
+        double half = SIZE / 2.0;
+        int cx0 = cellX(left - half), cx1 = cellX(left + w + half);
+        int cy0 = cellY(top - half),  cy1 = cellY(top + h + half);
+
+        int found = 0;
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * GRID_W + cx;
+                for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                    int i = cellItems[k];
+                    if (x[i] + half > left && x[i] - half < left + w
+                            && y[i] + half > top && y[i] - half < top + h) {
+                        if (found == out.length) return found;
+                        out[found++] = i;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Gives shuttle i a new velocity, e.g. after a racket hit */
+    public void setVelocity(int i, double nvx, double nvy) {
+        vx[i] = nvx;
+        vy[i] = nvy;
+    }
+}
@@ -0,0 +1,215 @@
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Images converted to the layout of the display they are drawn on
+ * ({@link GraphicsConfiguration#createCompatibleImage}), so Java2D can blit them with its
+ * fast (and accelerated) loops, and kept at every size they are drawn at, so a scaled
+ * drawImage becomes a plain copy after the first frame.
+ *
+ * The image handed to the game is the handle; drawing looks up the handle and gets the
+ * image to blit. When the frame moves to a display with a different configuration, the
+ * sprites are rebuilt for it. Entries go away with their handle.
+ */
+public class SpriteCache {
+    /** What the cache knows about one handle */
+    private static final class Sprite {
+        final int transparency;
+        Image current;                    // null while the handle itself is current
+        int generation;
+        int sizes = 0;
+        int[] widths = new int[2];
+        int[] heights = new int[2];
+        Image[] scaled = new Image[2];
+
+        Sprite(int transparency, int generation) {
+            this.transparency = transparency;
+            this.generation = generation;
+        }
+    }
+
+    private final WeakHashMap<Image, Sprite> sprites = new WeakHashMap<Image, Sprite>();
+    private GraphicsConfiguration config;
+    private int generation = 0;
+
+    public SpriteCache() {
+        // Until the first frame says otherwise, assume the default screen
+        if (!GraphicsEnvironment.isHeadless()) {
+            config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration();
+        }
+    }
+
+    /**
+     * Makes a compatible copy of source and returns it as the handle to draw with.
+     * Safe to call from several loader threads; the copying is done outside the lock.
+     */
+    public Image add(BufferedImage source) {
+        GraphicsConfiguration gc;
+        int gen;
+        synchronized (this) {
+            gc = config;
+            gen = generation;
+        }
+        int transparency = transparencyOf(source);
+        Image handle = copy(gc, source, source.getWidth(), source.getHeight(), transparency);
+        synchronized (this) {
+            // Made for a configuration that has since changed: convert it again now, on the
+            // loader thread, rather than when it is first drawn
+            Sprite sprite = new Sprite(transparency, gen);
+            sprites.put(handle, sprite);
+            convert(handle, sprite);
+        }
+        return handle;
+    }
+
+    /**
+     * Sets the configuration frames are drawn with. When it changes every sprite is rebuilt
+     * for it at once, so a sprite first drawn much later does not have to convert (and
+     * allocate) in the middle of play. Another configuration of the same screen, or a new
+     * object for offscreen images with the same layout (Java2D makes them afresh once the old
+     * one is collected), is not a change; another screen always is.
+     */
+    public synchronized void setConfiguration(GraphicsConfiguration config) {
+        if (config == null || config == this.config) return;
+        GraphicsConfiguration old = this.config;
+        this.config = config;
+        if (old != null && sameLayout(old, config)) return;
+        generation++;
+        for (Map.Entry<Image, Sprite> e : sprites.entrySet()) {
+            convert(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * The image to blit for handle at size (w,h): compatible with the current configuration and
+     * already (w,h) in size. Images the cache does not know are returned as they are.
+     */
+    public synchronized Image resolve(Image handle, int w, int h) {
+        Sprite sprite = sprites.get(handle);
+        if (sprite == null) return handle;
+
+        // Converted ahead of time, but made sure of here
+        if (sprite.generation != generation) convert(handle, sprite);
+
+        Image base = sprite.current != null ? sprite.current : handle;
+        if (base.getWidth(null) == w && base.getHeight(null) == h) return base;
+        for (int i = 0; i < sprite.sizes; i++) {
+            if (sprite.widths[i] == w && sprite.heights[i] == h) return sprite.scaled[i];
+        }
+
+        // First draw at this size; smooth scaling leaves partly transparent edges
+        if (sprite.sizes == sprite.scaled.length) {
+            sprite.widths  = java.util.Arrays.copyOf(sprite.widths, sprite.sizes * 2);
+            sprite.heights = java.util.Arrays.copyOf(sprite.heights, sprite.sizes * 2);
+            sprite.scaled  = java.util.Arrays.copyOf(sprite.scaled, sprite.sizes * 2);
+        }
+        Image scaled = copy(config, base, w, h, sprite.transparency == Transparency.OPAQUE
+                ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+        sprite.widths[sprite.sizes]  = w;
+        sprite.heights[sprite.sizes] = h;
+        sprite.scaled[sprite.sizes]  = scaled;
+        sprite.sizes++;
+        return scaled;
+    }
+
+    /**
+     * True if images made for a are as good for b: the same screen, or offscreen images
+     * with the same color model. Two screens alike in every other way are still different
+     * devices, with their own accelerated copies, so moving between them rebuilds.
+     */
+    private static boolean sameLayout(GraphicsConfiguration a, GraphicsConfiguration b) {
+        if (a.getDevice() == b.getDevice()) return true;
+        return a.getDevice().getType() == GraphicsDevice.TYPE_IMAGE_BUFFER
+                && b.getDevice().getType() == GraphicsDevice.TYPE_IMAGE_BUFFER
+                && a.getColorModel().equals(b.getColorModel());
+    }
+
+    /** Converts a sprite to the current configuration, dropping its old scaled copies */
+    private void convert(Image handle, Sprite sprite) {
+        if (sprite.generation == generation) return;
+        Image base = sprite.current != null ? sprite.current : handle;
+        sprite.current = copy(config, base, base.getWidth(null), base.getHeight(null), sprite.transparency);
+        sprite.sizes = 0;
+        sprite.generation = generation;
+    }
+
+    /** Heap bytes of the pixels kept for handle: the handle, its current conversion and scaled copies */
+    public synchronized long heapBytes(Image handle) {
+        long total = pixelBytes(handle);
+        Sprite sprite = sprites.get(handle);
+        if (sprite == null) return total;
+        total += pixelBytes(sprite.current);
+        for (int i = 0; i < sprite.sizes; i++) total += pixelBytes(sprite.scaled[i]);
+        return total;
+    }
+
+    /** Bytes of the accelerated copies (video memory, pixmaps) Java2D keeps of those images */
+    public synchronized long nativeBytes(Image handle) {
+        Sprite sprite = sprites.get(handle);
+        if (sprite == null) return acceleratedBytes(handle);
+        long total = acceleratedBytes(sprite.current != null ? sprite.current : handle);
+        for (int i = 0; i < sprite.sizes; i++) total += acceleratedBytes(sprite.scaled[i]);
+        return total;
+    }
+
+    private static long pixelBytes(Image image) {
+        if (!(image instanceof BufferedImage)) return 0;
+        DataBuffer data = ((BufferedImage) image).getRaster().getDataBuffer();
+        return (long) data.getSize() * data.getNumBanks() * DataBuffer.getDataTypeSize(data.getDataType()) / 8;
+    }
+
+    private long acceleratedBytes(Image image) {
+        if (image == null || config == null || !image.getCapabilities(config).isAccelerated()) return 0;
+        return 4L * image.getWidth(null) * image.getHeight(null);
+    }
+
+    /** Number of images the cache is keeping compatible */
+    public synchronized int size() {
+        return sprites.size();
+    }
+
+    /** A new image of (w,h) laid out for gc, with source drawn into it */
+    private static BufferedImage copy(GraphicsConfiguration gc, Image source, int w, int h, int transparency) {
+        BufferedImage image;
+        if (gc != null) {
+            image = gc.createCompatibleImage(w, h, transparency);
+        } else {
+            image = new BufferedImage(w, h, transparency == Transparency.OPAQUE
+                    ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, w, h, null);
+        g.dispose();
+        return image;
+    }
+
+    /** OPAQUE, BITMASK (alpha only 0 or 255) or TRANSLUCENT, from the pixels */
+    private static int transparencyOf(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) return Transparency.OPAQUE;
+        int w = image.getWidth(), h = image.getHeight();
+        int[] row = new int[w];
+        boolean opaque = true;
+        for (int y = 0; y < h; y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            for (int argb : row) {
+                int alpha = argb >>> 24;
+                if (alpha != 255) {
+                    if (alpha != 0) return Transparency.TRANSLUCENT;
+                    opaque = false;
+                }
+            }
+        }
+        return opaque ? Transparency.OPAQUE : Transparency.BITMASK;
+    }
+}
@@ -2,6 +2,8 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Rectangle2D;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public class Stickman_Badminton extends GameEngine {
     // --------------------------------------------------------------------
@@ -9,31 +11,41 @@ public class Stickman_Badminton extends GameEngine {
     // --------------------------------------------------------------------
     private static final int CANVAS_WIDTH = 800;
     private static final int CANVAS_HEIGHT = 500;
-    private static final double BIRDIE_BOUNCE_SPEED = 600;
+    private static final int FRAME_RATE = 60;
+    private static final int TICK_RATE = 120;
+    // The scoreboard
+    private static final int SCORE_X = 350, SCORE_Y = 50, SCORE_WIDTH = 100, SCORE_HEIGHT = 48;
+    private static final int SCORE_TEXT_X = 369, SCORE_TEXT_Y = 82;
 
     // --------------------------------------------------------------------
     // Audio
     // --------------------------------------------------------------------
-    AudioClip bgMusic;
+    MusicStream bgMusic;
+    AudioClip bgMusicClip;           // the music decoded instead, when it cannot be streamed
     AudioClip serveSfx;
     AudioClip smashSfx;
     AudioClip suddenTurnSfx;
     AudioClip clearSfx;
     AudioClip winningSfx;
 
-    // --------------------------------------------------------------------
-    // Hit Box Visualization
-    // --------------------------------------------------------------------
-    private final boolean HitBoxVisualization = false;
-
     // --------------------------------------------------------------------
     // Game Objects
     // --------------------------------------------------------------------
-    private Image menu;
     private Image background;
-    private Image inst1;
-    private Image inst2;
     private Image scoreBoard;
+    // Assets after the menu's own load behind it; play waits for them
+    private Future<Image> backgroundAsset, scoreBoardAsset;
+    private static final String MUSIC_FILE = "Audio/audio_background.WAV";
+    private Future<Object> musicAsset;          // a MusicStream, or an AudioClip if it cannot stream
+    private Future<AudioClip> serveSfxAsset, smashSfxAsset, suddenTurnSfxAsset, clearSfxAsset, winningSfxAsset;
+    private boolean assetsReady = false;
+    private boolean startupReport = false;     // print the startup timings once everything is in
+    // Full-screen pictures are only held around the screens that show them, so that
+    // under an asset budget they can be evicted during play
+    private static final String MENU_IMAGE = "img/menu.png";
+    private static final String INST1_IMAGE = "img/inst1.png";
+    private static final String INST2_IMAGE = "img/inst2.png";
+    private Future<Image> menuAsset, inst1Asset, inst2Asset;
     private Player leftPlayer, rightPlayer;
     private Birdie birdie;
     private GameState gameState = GameState.Menu;
@@ -44,45 +56,363 @@ public class Stickman_Badminton extends GameEngine {
     private double instTimer = 0;
     private boolean nextServerLeft = true;  // left first server
     private boolean wasInPlay;
-    private static final int WIN_SCORE = 21;
+    static final int WIN_SCORE = 21;
     private boolean restart = false;
     private boolean gameOver = false;
     private boolean enterFlag = false;
+    private double renderAlpha = 1.0;
+
+    // Menu and end-screen labels, and the score text for every score a match can show,
+    // made once so that frames do not build strings
+    private static final String[] MENU_OPTIONS = {"One-player Mode", "Two-player mode", "Drill mode", "Quit"};
+    private static final String[] END_OPTIONS = {"Restart", "Back to menu", "Quit"};
+    private static final String[][] SCORE_TEXT = new String[WIN_SCORE + 1][WIN_SCORE + 1];
+    static {
+        for (int l = 0; l <= WIN_SCORE; l++) {
+            for (int r = 0; r <= WIN_SCORE; r++) SCORE_TEXT[l][r] = " "+ l+ " - "+ r;
+        }
+    }
+
+    // Stops a headless match that never finishes (one hour of game time)
+    private static final long HEADLESS_TICK_LIMIT = 3600L * TICK_RATE;
+
+    // Robot-controlled human players, so a match can run without input
+    private boolean autoPlay = false;
+
+    // Tunable physics constants, shared with the players and the birdie
+    private final PhysicsConfig physics;
+
+    // Optional rally/serve/duration statistics and the game time of the current match
+    private MatchStats stats;
+    private double matchTime = 0;
+
+    // Drill mode: a feeding machine on the right fires shuttles at the left player
+    private static final int DRILL_CAPACITY = 10000;
+    private static final double MACHINE_X = 760, MACHINE_Y = 300;
+    private ShuttlePool drill;             // made by the first startDrill(); most games never need it
+    private double feedRate = 4;           // shuttles per second
+    private double feedTimer = 0;
+    private int drillHits = 0;
+    private final int[] drillFound = new int[256];
+
+    // Path of the shuttle in flight, predicted once per serve or hit
+    private final TrajectoryPredictor predictor;
+    // Where the robot means its racket to meet the shuttle: this far below the player's y,
+    // in front of its centre, this long after the swing starts. Aimed a little low, so
+    // robot-vs-robot rallies last about 16 hits rather than going on forever.
+    private static final double AI_HIT_HEIGHT = 60;
+    private static final double AI_HIT_REACH = 21;
+    private static final double AI_SWING_LEAD = 0.075;
+    // Hard difficulty: the robot plans its hits by rollouts instead, falling back on
+    // driveRobot when it has no plan
+    private boolean hardAI = false;
+    private RolloutPlanner planner;
+    // How often driveRobot decides, on simulated time; every tick unless slowed down
+    private final Subsystem robotDecisions;
+    // Asset housekeeping needs no more than a few looks a second
+    private static final int ASSET_RATE = 10;
+
+    /** Everything a frame draws, copied out of the game after its ticks by snapshot() */
+    private static final class Scene {
+        GameState state;
+        int menuOption, endOption, scoreLeft, scoreRight;
+        Image background, menu, inst;
+        final Player.Snapshot left = new Player.Snapshot();
+        final Player.Snapshot right = new Player.Snapshot();
+        final Birdie.Snapshot birdie = new Birdie.Snapshot();
+
+        // Drill mode; the arrays grow with the number of shuttles in the air
+        int shuttles;
+        float[] x = NO_SHUTTLES, y = NO_SHUTTLES, vx = NO_SHUTTLES, vy = NO_SHUTTLES;
+        int feedRate, drillHits;
+        long returned, missed;
+
+        // Predicted shuttle path, when the overlay is on
+        int pathPoints;
+        final float[] pathX = new float[TrajectoryPredictor.HORIZON + 1];
+        final float[] pathY = new float[TrajectoryPredictor.HORIZON + 1];
+        boolean landing;
+        float landingX;
+
+        /** Makes room for n drill shuttles, at least doubling so a filling pool grows them rarely */
+        void fitShuttles(int n) {
+            if (n <= x.length) return;
+            int size = Math.min(DRILL_CAPACITY, Math.max(n, Math.max(64, 2 * x.length)));
+            x = new float[size];
+            y = new float[size];
+            vx = new float[size];
+            vy = new float[size];
+        }
+    }
+    private static final float[] NO_SHUTTLES = new float[0];
+
+    // Scenes handed from the simulation thread to the renderer; none when headless, since
+    // nothing is drawn and no snapshot is ever taken
+    private final TripleBuffer<Scene> scenes;
+
+    // The screens' static parts, painted once into layers: the court (background and
+    // scoreboard), the menu and the end-of-match screen. Each is painted again when what
+    // it was painted from changes, and freed with its picture when its screen is left,
+    // so an evicted menu picture is not kept alive by them; painting thread only
+    private final Layer courtLayer, menuLayer, endLayer;
+    private GameState layersScreen;
+    private Image courtBackground, menuArt;
+    private int courtScoreLeft, courtScoreRight, menuShown;
+    private Image endBackground;
+    private int endScoreLeft, endScoreRight, endShown;
+
+    // Drill-mode status lines, refilled only when a number in them changes; painting thread only
+    private final StringBuilder feedLine = new StringBuilder(96);
+    private final StringBuilder hitsLine = new StringBuilder(96);
+    private int feedShown = -1, airShown = -1, hitsShown = -1;
+    private long returnedShown = -1, missedShown = -1;
+
+    // What the last frame presented showed, for collectDamage(); painting thread only
+    private GameState shownState;
+    private Image shownBackground;
+    private int shownScoreLeft, shownScoreRight;
+    private boolean shownOverlays;
+    private final Rectangle shownLeft = new Rectangle();
+    private final Rectangle shownRight = new Rectangle();
+    private final Rectangle shownBirdie = new Rectangle();
+    private final Rectangle drawn = new Rectangle();
+
+    public Stickman_Badminton() {
+        this(false, new PhysicsConfig());
+    }
+
+    /** A game without window, images or audio, driven by runHeadless() */
+    public Stickman_Badminton(boolean headless) {
+        this(headless, new PhysicsConfig());
+    }
+
+    public Stickman_Badminton(boolean headless, PhysicsConfig physics) {
+        super(headless);
+        this.physics = physics;
+        this.predictor = new TrajectoryPredictor(physics);
+        if (headless) {
+            scenes = null;
+        } else {
+            scenes = new TripleBuffer<Scene>(new Scene(), new Scene(), new Scene());
+            setSnapshots(scenes);
+        }
+        setDirtyRendering(true);
+
+        robotDecisions = addSubsystem("robot", TICK_RATE, null);
+        addSubsystem("assets", ASSET_RATE, new SubsystemTask() {
+            @Override
+            public void run(double dt) {
+                keepAssets();
+            }
+        });
+
+        courtLayer = createLayer(CANVAS_WIDTH, CANVAS_HEIGHT, false, new LayerPainter() {
+            @Override
+            public void paintLayer() {
+                paintCourt(scenes.front());
+            }
+        });
+        menuLayer = createLayer(CANVAS_WIDTH, CANVAS_HEIGHT, false, new LayerPainter() {
+            @Override
+            public void paintLayer() {
+                Scene scene = scenes.front();
+                clearBackground(CANVAS_WIDTH, CANVAS_HEIGHT);
+                drawImage(scene.menu, 0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
+                drawMenuOptions(scene.menuOption);
+            }
+        });
+        endLayer = createLayer(CANVAS_WIDTH, CANVAS_HEIGHT, false, new LayerPainter() {
+            @Override
+            public void paintLayer() {
+                Scene scene = scenes.front();
+                paintCourt(scene);
+                drawEndOptions(scene.endOption);
+            }
+        });
+    }
 
     public static void main(String[] args) {
-        createGame(new Stickman_Badminton());
+        if (args.length > 0 && args[0].equals("--headless")) {
+            int matches = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+            simulateHeadless(matches);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--replay")) {
+            replayHeadless(args[1]);
+            return;
+        }
+        Stickman_Badminton game = new Stickman_Badminton();
+        String record = null;
+        for (int i = 0; i < args.length; i++) {
+            // Page-flipped rendering, optionally full screen
+            if (args[i].equals("--active")) game.setActiveRendering(false);
+            if (args[i].equals("--fullscreen")) game.setActiveRendering(true);
+            // Repaint whole frames instead of what changed
+            if (args[i].equals("--full-frames")) game.setDirtyRendering(false);
+            // Log seed, settings and input so the session can be replayed
+            if (args[i].equals("--record") && i + 1 < args.length) record = args[++i];
+            // The robot plans its hits by rollouts
+            if (args[i].equals("--hard")) game.setHardAI(true);
+            // Decisions per second of the standard robot
+            if (args[i].equals("--ai-rate") && i + 1 < args.length) game.setAIRate(Integer.parseInt(args[++i]));
+            // Where the time to the menu and to the last asset goes
+            if (args[i].equals("--startup-report")) game.startupReport = true;
+            // Memory cap, in MB, for images and audio not in use
+            if (args[i].equals("--asset-budget") && i + 1 < args.length) {
+                game.setAssetBudget(Long.parseLong(args[++i]) * 1024 * 1024);
+            }
+        }
+        // Once the settings are all in, so the log has them
+        if (record != null) game.startRecording(record);
+        createGame(game, FRAME_RATE, TICK_RATE);
+    }
+
+    /** Replays a recorded session without a window and checks it ends in the recorded state */
+    private static void replayHeadless(String filename) {
+        System.setProperty("java.awt.headless", "true");
+        Stickman_Badminton game = new Stickman_Badminton(true);
+        game.init();
+        if (!game.replay(filename)) System.exit(1);
+    }
+
+    /** Plays robot-vs-robot PlayOne matches without a window and reports the cost per tick */
+    private static void simulateHeadless(int matches) {
+        System.setProperty("java.awt.headless", "true");
+        long totalTicks = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < matches; i++) {
+            Stickman_Badminton game = new Stickman_Badminton(true);
+            game.init();
+            game.setFixedTimestep(TICK_RATE);
+            game.setAutoPlay(true);
+            game.startMatch(GameState.PlayOne);
+            totalTicks += game.runHeadless(HEADLESS_TICK_LIMIT);
+            System.out.println("Match " + (i + 1) + ": " + game.scoreLeft + " - " + game.scoreRight);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d ticks in %.3f s (%.3f us/tick)%n",
+                totalTicks, elapsed, elapsed * 1e6 / Math.max(1, totalTicks));
     }
 
     @Override
     public void init() {
         setupWindow(CANVAS_WIDTH, CANVAS_HEIGHT);
         setWindowSize(CANVAS_WIDTH, CANVAS_HEIGHT);
+        assets().mark("window");
 
-        // Basic image
-        background = loadImage("img/background.png");
-        menu = loadImage("img/menu.png");
-        inst1 = loadImage("img/inst1.png");
-        inst2 = loadImage("img/inst2.png");
-        scoreBoard = loadImage("img/scoreboard.png");
+        // The menu only needs its picture, so that is asked for first
+        menuAsset = loadImageAsync(MENU_IMAGE);
+
+        // Music streams from disk and starts as soon as the file is open, holding nothing up.
+        // A WAV the mixer cannot stream (another rate, say) is decoded and resampled instead.
+        musicAsset = loadAsync(MUSIC_FILE, new Callable<Object>() {
+            @Override
+            public Object call() {
+                MusicStream music = loadMusic(MUSIC_FILE);
+                if (music != null) {
+                    startMusic(music);
+                    return music;
+                }
+                AudioClip clip = loadAudio(MUSIC_FILE);
+                if (clip != null) startAudioLoop(clip);
+                return clip;
+            }
+        });
+
+        // Everything else decodes in parallel behind them, roughly in the order it is needed
+        inst1Asset = loadImageAsync(INST1_IMAGE);
+        inst2Asset = loadImageAsync(INST2_IMAGE);
+        backgroundAsset = loadImageAsync("img/background.png");
+        scoreBoardAsset = loadImageAsync("img/scoreboard.png");
 
         // Player
-        leftPlayer = new Player(this, "img/left-player", 200 - 75, 350, +1);
-        rightPlayer = new Player(this, "img/right-player", 600 - 75, 350, -1);
+        leftPlayer = new Player(this, "img/left-player", 200 - 75, 350, +1, physics);
+        rightPlayer = new Player(this, "img/right-player", 600 - 75, 350, -1, physics);
         leftPlayer.init();
         rightPlayer.init();
 
         // Birdie
-        birdie = new Birdie(this, "img/ball.png");
+        birdie = new Birdie(this, "img/ball.png", physics);
 
         // Audio
-        bgMusic = loadAudio("Audio/audio_background.WAV");
-        serveSfx = loadAudio("Audio/audio_serve.wav");
-        smashSfx = loadAudio("Audio/audio_smash.wav");
-        suddenTurnSfx = loadAudio("Audio/audio_sudden-turn.wav");
-        clearSfx = loadAudio("Audio/audio_clear.wav");
-        winningSfx = loadAudio("Audio/audio_winning.wav");
+        serveSfxAsset = loadAudioAsync("Audio/audio_serve.wav");
+        smashSfxAsset = loadAudioAsync("Audio/audio_smash.wav");
+        suddenTurnSfxAsset = loadAudioAsync("Audio/audio_sudden-turn.wav");
+        clearSfxAsset = loadAudioAsync("Audio/audio_clear.wav");
+        winningSfxAsset = loadAudioAsync("Audio/audio_winning.wav");
+
+        AssetLoader.get(menuAsset);
+        assets().mark("menu assets");
+
+        // Without a window there is nothing to show while loading
+        if (isHeadless()) awaitAssets();
+    }
+
+    /** Waits until every asset has loaded; play and the benchmarks need them all */
+    public void awaitAssets() {
+        if (!assetsReady) collectAssets(true);
+    }
+
+    /** Picks up the assets once the loader is idle, or waits for them */
+    private void collectAssets(boolean wait) {
+        if (!wait && !assets().isIdle()) return;
+
+        background = AssetLoader.get(backgroundAsset);
+        scoreBoard = AssetLoader.get(scoreBoardAsset);
+        Object music = AssetLoader.get(musicAsset);
+        bgMusic = music instanceof MusicStream ? (MusicStream) music : null;
+        bgMusicClip = music instanceof AudioClip ? (AudioClip) music : null;
+        leftPlayer.awaitSprites();
+        rightPlayer.awaitSprites();
+        birdie.awaitSprites();
+        serveSfx = AssetLoader.get(serveSfxAsset);
+        smashSfx = AssetLoader.get(smashSfxAsset);
+        suddenTurnSfx = AssetLoader.get(suddenTurnSfxAsset);
+        clearSfx = AssetLoader.get(clearSfxAsset);
+        winningSfx = AssetLoader.get(winningSfxAsset);
 
-        startAudioLoop(bgMusic);
+        assetsReady = true;
+        assets().mark("all assets");
+    }
+
+    /**
+     * Holds the menu picture while the menu is up, and the instruction screens from the
+     * menu until play starts, releasing them otherwise
+     */
+    private void holdScreenAssets() {
+        boolean menuShown = gameState == GameState.Menu;
+        boolean instNext = menuShown || gameState == GameState.Inst;
+        if (menuShown && menuAsset == null) menuAsset = loadImageAsync(MENU_IMAGE);
+        if (!menuShown && menuAsset != null) {
+            releaseAsset(MENU_IMAGE);
+            menuAsset = null;
+        }
+        if (instNext && inst1Asset == null) {
+            inst1Asset = loadImageAsync(INST1_IMAGE);
+            inst2Asset = loadImageAsync(INST2_IMAGE);
+        }
+        if (!instNext && inst1Asset != null) {
+            releaseAsset(INST1_IMAGE);
+            releaseAsset(INST2_IMAGE);
+            inst1Asset = null;
+            inst2Asset = null;
+        }
+    }
+
+    /** Picks up the assets once loaded, holds the screens' pictures and prints the startup report */
+    private void keepAssets() {
+        if (!assetsReady) collectAssets(false);
+        holdScreenAssets();
+        if (startupReport && assetsReady && mPaintedFirstFrame) {
+            System.out.print(assets().report());
+            System.out.print(assetManager().report());
+            startupReport = false;
+        }
+    }
+
+    /** The asset if it has finished loading, otherwise null */
+    private static <T> T ifLoaded(Future<T> asset) {
+        return asset != null && asset.isDone() ? AssetLoader.get(asset) : null;
     }
 
     @Override
@@ -97,52 +427,40 @@ public class Stickman_Badminton extends GameEngine {
             case Inst:
                 instTimer += dt;
                 if (instTimer >= 1.5) {
+                    // Normally long done by now; waiting keeps the tick count the same as a replay
+                    awaitAssets();
                     if(menuOption == 0) {
                         gameState = GameState.PlayOne;
                     }else if (menuOption == 1) {
                         gameState = GameState.PlayTwo;
+                    }else if (menuOption == 2) {
+                        startDrill();
                     }
                 }
                 return;
             case Menu:
                 return;
             case PlayOne:
+                matchTime += dt;
                 // ——— Update the left side ———
+                if (!autoPlay) steer(leftPlayer, KeyEvent.VK_D, KeyEvent.VK_A);
                 leftPlayer.update(dt);
 
                 // ——— Update the robot ai on the right ———
                 rightPlayer.update(dt);
-                // If the ball is in flight, let the robot track the x of the ball
-                if (birdie.isInPlay() && birdie.x > 400) {
-                    double targetX = birdie.x - 75 - 10; // 机器人 x 对齐球心
-                    double targetY = birdie.y;
-                    if (Math.abs(targetX - rightPlayer.x) > 10) {
-                        if (birdie.vx > 0 || birdie.x > 600)
-                        {
-                            if (targetX > rightPlayer.x) {
-                                rightPlayer.setAction(Player.Action.Forward);
-                            } else {
-                                rightPlayer.setAction(Player.Action.Backward);
-                            }
-                        }
-                    } else {
-                        rightPlayer.setAction(Player.Action.Standing);
-                        // If the ball is within the hitting range, swing the racket
-                        if (Math.abs(targetY - rightPlayer.y) < 40){
-                            rightPlayer.setAction(Player.Action.Swing);
-                        }
-                    }
-                } else {
-                    // If the ball is not flying, it remains standing
-                    rightPlayer.setAction(Player.Action.Standing);
+                if (!hardAI || !planner().drive(rightPlayer, leftPlayer, birdie, predictor, dt)) {
+                    if (robotDecisions.isDue()) driveRobot(rightPlayer, dt);
                 }
-                
+                if (autoPlay && robotDecisions.isDue()) driveRobot(leftPlayer, dt);
 
                 // ——— Automatic serve ————
                 if (!birdie.isInPlay()) {
-                    if (nextServerLeft && leftPlayer.consumeServeFinished()) {
-                        serveFrom(leftPlayer);
-                        playAudio(suddenTurnSfx);
+                    if (nextServerLeft) {
+                        if (autoPlay) leftPlayer.setAction(Player.Action.Serving);
+                        if (leftPlayer.consumeServeFinished()) {
+                            serveFrom(leftPlayer);
+                            playAudio(suddenTurnSfx);
+                        }
                     }
                     if (!nextServerLeft) {
                         rightPlayer.setAction(Player.Action.Serving);
@@ -166,22 +484,24 @@ public class Stickman_Badminton extends GameEngine {
                         double angleRad = Math.toRadians(leftPlayer.getRacketAngle());
                         // 2) Add random acceleration (up to 30% more here)
                         double randomFactor = 1 + rand(0.5);
-                        double bounceSpeed = BIRDIE_BOUNCE_SPEED * randomFactor;
+                        double bounceSpeed = physics.birdieBounceSpeed * randomFactor;
                         // 3) Give vx and vy by Angle (0° corresponds directly above)
                         birdie.vx = Math.sin(angleRad) * bounceSpeed;
                         birdie.vy = -Math.cos(angleRad / 2) * bounceSpeed;
 
                         // smashSfx
                         playAudio(smashSfx);
+                        if (stats != null) stats.hit();
                     } else if (rightPlayer.tryHit(birdie)) {
                         double angleRad = Math.toRadians(rightPlayer.getRacketAngle());
-                        double randomFactor = 1 + Math.random() * 0.3;
-                        double bounceSpeed = BIRDIE_BOUNCE_SPEED * randomFactor;
+                        double randomFactor = 1 + rand(0.3);
+                        double bounceSpeed = physics.birdieBounceSpeed * randomFactor;
                         birdie.vx = -Math.sin(angleRad) * bounceSpeed;
                         birdie.vy = -Math.cos(angleRad / 2) * bounceSpeed;
 
                         // smashSfx
                         playAudio(smashSfx);
+                        if (stats != null) stats.hit();
                     }
                 }
 
@@ -194,18 +514,36 @@ public class Stickman_Badminton extends GameEngine {
                         scoreLeft++;
                         nextServerLeft = true;
                     }
+                    if (stats != null) stats.point(nextServerLeft); // the winner serves next
                     if (scoreLeft >= WIN_SCORE || scoreRight >= WIN_SCORE) {
                         endMatchOne();;
                         return;
                     }
                     restartMatch();
                 }
+
+                // 7) Predict the new flight after a serve or hit, for the robot
+                predictor.track(birdie, dt);
                 break;
 
             case PlayTwo:
+                matchTime += dt;
                 // 1) Update players (handle movement, swing, serve, jump)
+                if (!autoPlay) {
+                    steer(leftPlayer, KeyEvent.VK_D, KeyEvent.VK_A);
+                    steer(rightPlayer, KeyEvent.VK_RIGHT, KeyEvent.VK_LEFT);
+                }
                 leftPlayer.update(dt);
                 rightPlayer.update(dt);
+                if (autoPlay) {
+                    if (robotDecisions.isDue()) {
+                        driveRobot(leftPlayer, dt);
+                        driveRobot(rightPlayer, dt);
+                    }
+                    if (!birdie.isInPlay()) {
+                        (nextServerLeft ? leftPlayer : rightPlayer).setAction(Player.Action.Serving);
+                    }
+                }
 
                 // 2) If the ball is not in flight at present and the serve animation is completed, the serve is made
                 if (!birdie.isInPlay()) {
@@ -234,22 +572,24 @@ public class Stickman_Badminton extends GameEngine {
                         double angleRad = Math.toRadians(leftPlayer.getRacketAngle());
                         // 2) Add random acceleration (up to 30% more here)
                         double randomFactor = 1 + rand(0.5);
-                        double bounceSpeed = BIRDIE_BOUNCE_SPEED * randomFactor;
+                        double bounceSpeed = physics.birdieBounceSpeed * randomFactor;
                         // 3) Give vx and vy by Angle (0° corresponds directly above)
                         birdie.vx = Math.sin(angleRad) * bounceSpeed;
                         birdie.vy = -Math.cos(angleRad / 2 ) * bounceSpeed;
 
                         // smashSfx
                         playAudio(smashSfx);
+                        if (stats != null) stats.hit();
                     } else if (rightPlayer.tryHit(birdie)) {
                         double angleRad = Math.toRadians(rightPlayer.getRacketAngle());
-                        double randomFactor = 1 + Math.random() * 0.3;
-                        double bounceSpeed = BIRDIE_BOUNCE_SPEED * randomFactor;
+                        double randomFactor = 1 + rand(0.3);
+                        double bounceSpeed = physics.birdieBounceSpeed * randomFactor;
                         birdie.vx = -Math.sin(angleRad) * bounceSpeed;
                         birdie.vy = -Math.cos(angleRad / 2) * bounceSpeed;
 
                         // smashSfx
                         playAudio(smashSfx);
+                        if (stats != null) stats.hit();
                     }
                 }
 
@@ -262,6 +602,7 @@ public class Stickman_Badminton extends GameEngine {
                         scoreLeft++;
                         nextServerLeft = true;
                     }
+                    if (stats != null) stats.point(nextServerLeft); // the winner serves next
 
                     if (scoreLeft >= WIN_SCORE || scoreRight >= WIN_SCORE) {
                         endMatchTwo();
@@ -270,12 +611,223 @@ public class Stickman_Badminton extends GameEngine {
 
                     restartMatch();
                 }
+
+                // 7) Predict the new flight after a serve or hit, for the robots and the overlay
+                predictor.track(birdie, dt);
+                break;
+
+            case Drill:
+                if (!autoPlay) steer(leftPlayer, KeyEvent.VK_D, KeyEvent.VK_A);
+                leftPlayer.update(dt);
+                if (autoPlay) leftPlayer.setAction(Player.Action.Swing);
+                updateDrill(dt);
                 break;
         }
         // System.out.println(gameState);
     }
 
+    /**
+     * Walking follows the keys held this tick: letting go of one direction while the other
+     * is still held walks that way instead of stopping, and a player who finishes a swing
+     * with a key held carries on walking. Pressing a key still turns straight away.
+     */
+    private void steer(Player player, int forwardKey, int backwardKey) {
+        boolean forward = isKeyDown(forwardKey);
+        boolean backward = isKeyDown(backwardKey);
+        switch (player.getAction()) {
+            case Forward:
+                if (!forward) player.setAction(backward ? Player.Action.Backward : Player.Action.Standing);
+                break;
+            case Backward:
+                if (!backward) player.setAction(forward ? Player.Action.Forward : Player.Action.Standing);
+                break;
+            case Standing:
+                if (forward != backward) player.setAction(forward ? Player.Action.Forward : Player.Action.Backward);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Predictive AI: walk to where the shuttle will come down to racket height on the robot's
+     * half, and start the swing so the racket gets there with it. The prediction is made
+     * once per flight, so this is a few lookups per tick.
+     */
+    private void driveRobot(Player robot, double dt) {
+        driveRobot(robot, birdie, predictor, dt);
+    }
+
+    /** driveRobot for any shuttle and its predictor, as {@link BadmintonEnv} plays without a game */
+    static void driveRobot(Player robot, Birdie birdie, TrajectoryPredictor predictor, double dt) {
+        // Let a swing run its course
+        if (robot.getAction() == Player.Action.Swing) return;
+
+        int dir = robot.getServeDir();
+        double hitY = robot.y + AI_HIT_HEIGHT;
+        int wait = birdie.isInPlay() && predictor.hasFlight() ? predictor.ticksToReach(dir, hitY) : -1;
+        if (wait < 0) {
+            // Not in play, or not coming down on this side: it remains standing
+            robot.setAction(Player.Action.Standing);
+            return;
+        }
+
+        // Racket in front of the body, where it meets the shuttle
+        double targetX = predictor.reachX(dir, hitY) - 75 - AI_HIT_REACH * dir;
+        if (Math.abs(targetX - robot.x) > 10) {
+            robot.setAction(targetX > robot.x ? Player.Action.Forward : Player.Action.Backward);
+        } else if (wait * dt <= AI_SWING_LEAD) {
+            robot.setAction(Player.Action.Swing);
+        } else {
+            robot.setAction(Player.Action.Standing);
+        }
+    }
+
+    /** Feeds new shuttles, moves all of them and returns the ones on the left racket */
+    private void updateDrill(double dt) {
+        feedTimer += dt;
+        double period = 1 / feedRate;
+        while (feedTimer >= period) {
+            feedTimer -= period;
+            drill.spawn(MACHINE_X, MACHINE_Y,
+                    -physics.initSpeed * (1.0 + rand(0.6)),
+                    -physics.initSpeed * (0.8 + rand(0.6)));
+        }
+
+        drill.update(dt);
+
+        if (!leftPlayer.isHitting()) return;
+        Rectangle2D box = leftPlayer.getRacketHitBox();
+        int found = drill.query(box.getX(), box.getY(), box.getWidth(), box.getHeight(), drillFound);
+        if (found == 0) return;
+        // Same bounce as a normal left hit
+        double angleRad = Math.toRadians(leftPlayer.getRacketAngle());
+        for (int i = 0; i < found; i++) {
+            double bounceSpeed = physics.birdieBounceSpeed * (1 + rand(0.5));
+            drill.setVelocity(drillFound[i],
+                    Math.sin(angleRad) * bounceSpeed,
+                    -Math.cos(angleRad / 2) * bounceSpeed);
+        }
+        drillHits += found;
+        playAudio(smashSfx);
+    }
+
+    private void startDrill() {
+        gameState = GameState.Drill;
+        if (drill == null) drill = new ShuttlePool(DRILL_CAPACITY, physics);
+        drill.clear();
+        feedTimer = 0;
+        drillHits = 0;
+        leftPlayer.resetPosition();
+        leftPlayer.setSwingBounds();
+    }
+
+    /**
+     * Hard difficulty for the PlayOne robot. With a window the planner searches on spare cores
+     * within {@link RolloutPlanner#DEFAULT_BUDGET_NANOS} a frame, shared by the frame's ticks,
+     * so what it plays depends on timing. Headless, or while recording, it searches every
+     * candidate, so matches are as repeatable as with the standard robot and a recording
+     * replays exactly. Hard difficulty is one of the settings a recording keeps.
+     */
+    public void setHardAI(boolean hardAI) {
+        this.hardAI = hardAI;
+    }
+
+    /** The hard robot's planner, made when it is first needed, once any recording has started */
+    private RolloutPlanner planner() {
+        if (planner == null) {
+            boolean timed = !isHeadless() && mRecorder == null;
+            int workers = isHeadless() ? 0 : Math.min(3, Runtime.getRuntime().availableProcessors() - 1);
+            long budget = timed ? RolloutPlanner.DEFAULT_BUDGET_NANOS * FRAME_RATE / TICK_RATE : 0;
+            planner = new RolloutPlanner(physics, -1, 0.3, workers, budget);
+        }
+        return planner;
+    }
+
+    /**
+     * Decisions a second of the standard robot, TICK_RATE by default. Between decisions it
+     * keeps doing what it last chose, so a lower rate is a slower reaction; the hard robot
+     * follows its plan every tick whatever the rate. A recording keeps the rate.
+     */
+    public void setAIRate(int rate) {
+        robotDecisions.setRate(rate);
+    }
+
+    /** Hard difficulty and the AI rate, in that order */
+    @Override
+    protected long[] recordedSettings() {
+        return new long[] { hardAI ? 1 : 0, robotDecisions.getRate() };
+    }
+
+    @Override
+    protected void applySettings(long[] settings) {
+        if (settings.length < 2) return;           // recorded before there were settings
+        setHardAI(settings[0] != 0);
+        setAIRate((int) settings[1]);
+    }
+
+    /** The hard robot's planner, or null if hard difficulty has not been used */
+    RolloutPlanner getPlanner() {
+        return planner;
+    }
+
+    /** Let the robot AI control the left player too, and both players in PlayTwo */
+    public void setAutoPlay(boolean autoPlay) {
+        this.autoPlay = autoPlay;
+    }
+
+    /** Jump straight into a fresh match in the given mode, skipping the menu */
+    void startMatch(GameState mode) {
+        if (mode == GameState.Drill) {
+            startDrill();
+            return;
+        }
+        gameState = mode;
+        restartMatch();
+        restartScore();
+    }
+
+    @Override
+    public long stateHash() {
+        long h = gameState.ordinal();
+        h = h * 31 + menuOption;
+        h = h * 31 + endOption;
+        h = h * 31 + scoreLeft;
+        h = h * 31 + scoreRight;
+        h = h * 31 + (nextServerLeft ? 1 : 0);
+        h = h * 31 + Double.doubleToLongBits(birdie.x);
+        h = h * 31 + Double.doubleToLongBits(birdie.y);
+        h = h * 31 + Double.doubleToLongBits(birdie.vx);
+        h = h * 31 + Double.doubleToLongBits(birdie.vy);
+        h = h * 31 + (birdie.isInPlay() ? 1 : 0);
+        h = h * 31 + Double.doubleToLongBits(leftPlayer.x);
+        h = h * 31 + Double.doubleToLongBits(leftPlayer.y);
+        h = h * 31 + leftPlayer.getAction().ordinal();
+        h = h * 31 + Double.doubleToLongBits(rightPlayer.x);
+        h = h * 31 + Double.doubleToLongBits(rightPlayer.y);
+        h = h * 31 + rightPlayer.getAction().ordinal();
+        h = h * 31 + (drill == null ? 0 : drill.count());
+        h = h * 31 + drillHits;
+        return h;
+    }
+
+    @Override
+    public boolean headlessDone() {
+        return gameState == GameState.PlayOneEnd || gameState == GameState.PlayTwoEnd;
+    }
+
+    /** Collect rally, serve and duration statistics into stats (null to stop) */
+    public void setStats(MatchStats stats) {
+        this.stats = stats;
+    }
+
+    /** Game seconds played in the current match */
+    public double getMatchTime() {
+        return matchTime;
+    }
+
     private void serveFrom(Player p) {
+        if (stats != null) stats.serve(p == leftPlayer);
         double startX = p.x + 75;
         double startY = p.y + 75;
         rightPlayer.setRestrictedBounds();
@@ -286,69 +838,259 @@ public class Stickman_Badminton extends GameEngine {
         playAudio(serveSfx);
     }
 
+    @Override
+    public void paintComponent(double alpha) {
+        renderAlpha = alpha;
+        paintComponent();
+    }
+
+    /** Copies what the next frame draws into the back scene; runs after the game's ticks */
+    @Override
+    public void snapshot() {
+        Scene scene = scenes.back();
+        scene.state = gameState;
+        scene.menuOption = menuOption;
+        scene.endOption = endOption;
+        scene.scoreLeft = scoreLeft;
+        scene.scoreRight = scoreRight;
+        scene.background = background;
+        // Still loading, or reloading after an eviction: the cleared background until it is in
+        scene.menu = gameState == GameState.Menu ? ifLoaded(menuAsset) : null;
+        scene.inst = gameState == GameState.Inst ? ifLoaded(menuOption == 1 ? inst2Asset : inst1Asset) : null;
+        if (leftPlayer == null) return;
+
+        leftPlayer.capture(scene.left);
+        rightPlayer.capture(scene.right);
+        birdie.capture(scene.birdie);
+
+        scene.pathPoints = 0;
+        if (perfHud().showTrajectory()) {
+            int n = predictor.remaining();
+            for (int i = 0; i < n; i++) {
+                scene.pathX[i] = (float) predictor.pathX(i);
+                scene.pathY[i] = (float) predictor.pathY(i);
+            }
+            scene.pathPoints = n;
+            scene.landing = predictor.ticksToLanding() >= 0;
+            scene.landingX = (float) predictor.getLandingX();
+        }
+
+        scene.shuttles = 0;
+        if (gameState == GameState.Drill) {
+            int n = drill.count();
+            scene.fitShuttles(n);
+            for (int i = 0; i < n; i++) {
+                scene.x[i] = (float) drill.x[i];
+                scene.y[i] = (float) drill.y[i];
+                scene.vx[i] = (float) drill.vx[i];
+                scene.vy[i] = (float) drill.vy[i];
+            }
+            scene.shuttles = n;
+            scene.feedRate = (int) feedRate;
+            scene.drillHits = drillHits;
+            scene.returned = drill.getLandedRight();
+            scene.missed = drill.getLandedLeft();
+        }
+    }
+
+    /**
+     * On the match screen only the players, the shuttle and the score change, so a frame
+     * repaints where the sprites were and are, and the scoreboard when a point is won.
+     * Other screens, a change of screen and the debug overlays repaint everything.
+     */
+    @Override
+    public void collectDamage(double alpha) {
+        Scene scene = scenes.front();
+        boolean match = scene.state == GameState.PlayOne || scene.state == GameState.PlayTwo;
+        boolean overlays = perfHud().showHitBoxes() || scene.pathPoints > 0;
+        if (!match || scene.state != shownState || scene.background != shownBackground
+                || overlays || shownOverlays) {
+            damageAll();
+        } else if (scene.scoreLeft != shownScoreLeft || scene.scoreRight != shownScoreRight) {
+            // A two-digit score runs past the scoreboard
+            damage(SCORE_X, SCORE_Y, SCORE_WIDTH, SCORE_HEIGHT);
+            damageCachedText(SCORE_TEXT_X, SCORE_TEXT_Y, scoreText(shownScoreLeft, shownScoreRight), "Arial", 24);
+            damageCachedText(SCORE_TEXT_X, SCORE_TEXT_Y, scoreText(scene.scoreLeft, scene.scoreRight), "Arial", 24);
+        }
+        shownState = scene.state;
+        shownBackground = scene.background;
+        shownScoreLeft = scene.scoreLeft;
+        shownScoreRight = scene.scoreRight;
+        shownOverlays = overlays;
+        if (!match) return;
+
+        leftPlayer.drawBounds(scene.left, alpha, drawn);
+        damageMoved(shownLeft);
+        rightPlayer.drawBounds(scene.right, alpha, drawn);
+        damageMoved(shownRight);
+        birdie.drawBounds(scene.birdie, alpha, drawn);
+        damageMoved(shownBirdie);
+    }
+
+    /** Damages a sprite's last box and its new one, in drawn, which becomes the last */
+    private void damageMoved(Rectangle shown) {
+        damage(shown.x, shown.y, shown.width, shown.height);
+        damage(drawn.x, drawn.y, drawn.width, drawn.height);
+        shown.setBounds(drawn);
+    }
+
+    /** Draws the newest scene; reads nothing the simulation is changing */
     @Override
     public void paintComponent() {
         clearBackground(CANVAS_WIDTH, CANVAS_HEIGHT);
 
-        switch (gameState) {
+        Scene scene = scenes.front();
+        if (scene.state == null) return;           // nothing simulated yet
+        if (scene.state != layersScreen) {
+            flushLayers(scene.state);
+            layersScreen = scene.state;
+        }
+        switch (scene.state) {
             case Menu:
-                drawMenu();
+                drawMenu(scene);
                 break;
             case PlayOne:
-                drawPlayOne();
+                drawPlayOne(scene);
                 break;
             case PlayTwo:
-                drawPlayTwo();
+                drawPlayTwo(scene);
                 break;
             case Inst:
-                drawInst();
+                drawInst(scene);
                 break;
             case PlayOneEnd:
-                drawEndOne();
-                break;
             case PlayTwoEnd:
-                drawEndTwo();
+                drawEnd(scene);
+                break;
+            case Drill:
+                drawDrill(scene);
                 break;
             default:
                 break;
         }
     }
 
-    private void drawPlayOne() {
-        drawImage(background, 0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
-        drawScore( scoreLeft, scoreRight);
-        // Draw the player and the badminton
-        leftPlayer.draw();
-        rightPlayer.draw();
-        birdie.draw();
+    /** Frees the layers the screen does not draw, and lets go of what they were painted from */
+    private void flushLayers(GameState screen) {
+        if (screen != GameState.PlayOne && screen != GameState.PlayTwo) {
+            courtLayer.flush();
+            courtBackground = null;
+        }
+        if (screen != GameState.Menu) {
+            menuLayer.flush();
+            menuArt = null;
+        }
+        if (screen != GameState.PlayOneEnd && screen != GameState.PlayTwoEnd) {
+            endLayer.flush();
+            endBackground = null;
+        }
+    }
+
+    private void drawPlayOne(Scene scene) {
+        drawCourt(scene);
+        drawSprites(scene);
+    }
 
-        if (HitBoxVisualization) {
-            drawHitBox();
+    private void drawPlayTwo(Scene scene) {
+        drawCourt(scene);
+        drawSprites(scene);
+    }
+
+    /** The background and the scoreboard, from their layer */
+    private void drawCourt(Scene scene) {
+        if (scene.background != courtBackground || scene.scoreLeft != courtScoreLeft
+                || scene.scoreRight != courtScoreRight) {
+            courtBackground = scene.background;
+            courtScoreLeft = scene.scoreLeft;
+            courtScoreRight = scene.scoreRight;
+            courtLayer.invalidate();
         }
+        drawLayer(courtLayer, 0, 0);
     }
 
-    private void drawPlayTwo() {
-        drawImage(background, 0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
-        drawScore( scoreLeft, scoreRight);
+    private void paintCourt(Scene scene) {
+        clearBackground(CANVAS_WIDTH, CANVAS_HEIGHT);
+        drawImage(scene.background, 0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
+        drawScore(scene.scoreLeft, scene.scoreRight);
+    }
+
+    /** What moves over the court, and the debug overlays */
+    private void drawSprites(Scene scene) {
         // Draw the player and the badminton
-        leftPlayer.draw();
-        rightPlayer.draw();
-        birdie.draw();
+        leftPlayer.draw(scene.left, renderAlpha);
+        rightPlayer.draw(scene.right, renderAlpha);
+        birdie.draw(scene.birdie, renderAlpha);
+
+        if (perfHud().showHitBoxes()) {
+            drawHitBox(scene);
+        }
+        if (scene.pathPoints > 0) {
+            drawTrajectory(scene);
+        }
+    }
+
+    private void drawDrill(Scene scene) {
+        drawImage(scene.background, 0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
+        leftPlayer.draw(scene.left, renderAlpha);
+
+        // Feeding machine
+        changeColor(Color.DARK_GRAY);
+        drawSolidRectangle(MACHINE_X - 15, MACHINE_Y, 40, 470 - MACHINE_Y);
+
+        // Shuttles, pointing along their velocity with the birdie's pre-rotated sprites
+        for (int i = 0; i < scene.shuttles; i++) {
+            Image frame = birdie.spriteFor(scene.vx[i], scene.vy[i]);
+            drawImage(frame, scene.x[i] - frame.getWidth(null) / 2, scene.y[i] - frame.getHeight(null) / 2);
+        }
+
+        changeColor(black);
+        drawSolidRectangle(200, 30, 400, 60);
+        changeColor(Color.WHITE);
+        if (scene.feedRate != feedShown || scene.shuttles != airShown) {
+            feedShown = scene.feedRate;
+            airShown = scene.shuttles;
+            feedLine.setLength(0);
+            feedLine.append("Feed ").append(feedShown).append("/s (Up/Down)   In the air ").append(airShown);
+        }
+        if (scene.drillHits != hitsShown || scene.returned != returnedShown || scene.missed != missedShown) {
+            hitsShown = scene.drillHits;
+            returnedShown = scene.returned;
+            missedShown = scene.missed;
+            hitsLine.setLength(0);
+            hitsLine.append("Hits ").append(hitsShown).append("   Returned ").append(returnedShown)
+                    .append("   Missed ").append(missedShown).append("   Esc: menu");
+        }
+        drawCachedText(215, 55, feedLine, "Arial", 16);
+        drawCachedText(215, 80, hitsLine, "Arial", 16);
 
-        if (HitBoxVisualization) {
-            drawHitBox();
+        if (perfHud().showHitBoxes()) {
+            Rectangle2D box = scene.left.getRacketHitBox();
+            changeColor(255, 0, 0);
+            drawRectangle(box.getX(), box.getY(), box.getWidth(), box.getHeight());
         }
     }
 
-    private void drawMenu() {
-        drawImage(menu, 0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
+    /** The menu art and options, from their layer once the art is in */
+    private void drawMenu(Scene scene) {
+        if (scene.menu == null) {
+            drawMenuOptions(scene.menuOption);
+            return;
+        }
+        if (scene.menu != menuArt || scene.menuOption != menuShown) {
+            menuArt = scene.menu;
+            menuShown = scene.menuOption;
+            menuLayer.invalidate();
+        }
+        drawLayer(menuLayer, 0, 0);
+    }
 
-        String[] options = {"One-player Mode", "Two-player mode", "Quit"};
+    private void drawMenuOptions(int menuOption) {
+        String[] options = MENU_OPTIONS;
         changeColor(Color.WHITE);
         for (int i = 0; i < options.length; i++) {
             if (i == menuOption) changeColor(Color.YELLOW);
             else changeColor(Color.WHITE);
-            drawText(CANVAS_WIDTH / 2 + 130,
+            drawCachedText(CANVAS_WIDTH / 2 + 130,
                     350 + i * 40,
                     options[i],
                     "Arial", 24);
@@ -356,57 +1098,73 @@ public class Stickman_Badminton extends GameEngine {
 
     }
 
-    private void drawInst() {
-        if (menuOption == 0) drawImage(inst1, 0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
-        if (menuOption == 1) drawImage(inst2, 0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
+    private void drawInst(Scene scene) {
+        if (scene.inst != null) drawImage(scene.inst, 0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
     }
 
-    private void drawHitBox() {
-        Rectangle2D box = leftPlayer.getRacketHitBox();
+    private void drawHitBox(Scene scene) {
+        Rectangle2D box = scene.left.getRacketHitBox();
         changeColor(255, 0, 0);
         drawRectangle((int) box.getX(),
                 (int) box.getY(),
                 (int) box.getWidth(),
                 (int) box.getHeight());
-        box = rightPlayer.getRacketHitBox();
+        box = scene.right.getRacketHitBox();
         drawRectangle((int) box.getX(),
                 (int) box.getY(),
                 (int) box.getWidth(),
                 (int) box.getHeight());
-        box = birdie.getHitBox();
+        box = scene.birdie.getHitBox();
         drawRectangle((int) box.getX(),
                 (int) box.getY(),
                 (int) box.getWidth(),
                 (int) box.getHeight());
     }
 
+    /** The predicted flight from where the shuttle is, and where it will land */
+    private void drawTrajectory(Scene scene) {
+        changeColor(Color.YELLOW);
+        for (int i = 4; i < scene.pathPoints; i += 4) {
+            drawLine(scene.pathX[i - 4], scene.pathY[i - 4], scene.pathX[i], scene.pathY[i]);
+        }
+        if (scene.landing) {
+            drawCircle(scene.landingX, 470, 8);
+        }
+    }
+
     private void drawScore(int leftScore, int rightScore) {
         changeColor(black);
-        drawSolidRectangle( 350 , 50 , 100 , 48 );
+        drawSolidRectangle(SCORE_X, SCORE_Y, SCORE_WIDTH, SCORE_HEIGHT);
         changeColor(red);
-        drawText(369, 82,  " "+ leftScore+ " - "+ rightScore, "Arial", 24);
+        drawCachedText(SCORE_TEXT_X, SCORE_TEXT_Y, scoreText(leftScore, rightScore), "Arial", 24);
     }
 
-    private void drawEndOne() {
-        drawPlayOne();
-        String[] options = {"Restart", "Back to menu",  "Quit"};
-        for (int i = 0; i < options.length; i++) {
-            if (i == endOption) changeColor(Color.YELLOW);
-            else changeColor(Color.WHITE);
-            drawText(CANVAS_WIDTH / 2 - 100,
-                    250 + i * 50,
-                    options[i],
-                    "Arial", 50);
+    private static String scoreText(int leftScore, int rightScore) {
+        return leftScore <= WIN_SCORE && rightScore <= WIN_SCORE
+                ? SCORE_TEXT[leftScore][rightScore]
+                : " "+ leftScore+ " - "+ rightScore;
+    }
+
+    /** The court and the end-of-match options, from their layer, with the players over them */
+    private void drawEnd(Scene scene) {
+        if (scene.background != endBackground || scene.scoreLeft != endScoreLeft
+                || scene.scoreRight != endScoreRight || scene.endOption != endShown) {
+            endBackground = scene.background;
+            endScoreLeft = scene.scoreLeft;
+            endScoreRight = scene.scoreRight;
+            endShown = scene.endOption;
+            endLayer.invalidate();
         }
+        drawLayer(endLayer, 0, 0);
+        drawSprites(scene);
     }
 
-    private void drawEndTwo() {
-        drawPlayTwo();
-        String[] options = {"Restart", "Back to menu", "Quit"};
+    private void drawEndOptions(int endOption) {
+        String[] options = END_OPTIONS;
         for (int i = 0; i < options.length; i++) {
             if (i == endOption) changeColor(Color.YELLOW);
             else changeColor(Color.WHITE);
-            drawText(CANVAS_WIDTH / 2 - 100,
+            drawCachedText(CANVAS_WIDTH / 2 - 100,
                     250 + i * 50,
                     options[i],
                     "Arial", 50);
@@ -414,14 +1172,18 @@ public class Stickman_Badminton extends GameEngine {
     }
 
     private void endMatchOne() {
-        playAudio(winningSfx);
+        if (stats != null) stats.matchEnd(matchTime, true);
+        // The match result is never cut off by rally sounds
+        playAudio(winningSfx, 0, EFFECT_PRIORITY + 1);
         restartMatch();
         gameState = GameState.PlayOneEnd;
         endOption = 0;
     }
 
     private void endMatchTwo() {
-        playAudio(winningSfx);
+        if (stats != null) stats.matchEnd(matchTime, true);
+        // The match result is never cut off by rally sounds
+        playAudio(winningSfx, 0, EFFECT_PRIORITY + 1);
         restartMatch();
         gameState = GameState.PlayTwoEnd;
         endOption = 0;
@@ -436,6 +1198,7 @@ public class Stickman_Badminton extends GameEngine {
     }
 
     private void restartScore(){
+        matchTime = 0;
         nextServerLeft = true;
         scoreRight = 0;
         scoreLeft = 0;
@@ -449,17 +1212,17 @@ public class Stickman_Badminton extends GameEngine {
 
         switch (gameState) {
             case Menu:
-                if (k == KeyEvent.VK_UP) menuOption = (menuOption + 1) % 3;
-                if (k == KeyEvent.VK_DOWN) menuOption = (menuOption + 2) % 3;
+                if (k == KeyEvent.VK_UP) menuOption = (menuOption + 1) % 4;
+                if (k == KeyEvent.VK_DOWN) menuOption = (menuOption + 3) % 4;
                 if (k == KeyEvent.VK_ENTER && !enterFlag) {
                     if (menuOption == 0) {
                         gameState = GameState.Inst;
                         instTimer   = 0;
-                    } else if (menuOption == 1) {
+                    } else if (menuOption == 1 || menuOption == 2) {
                         gameState = GameState.Inst;
                         instTimer   = 0;
                     } else {                       // Quit
-                        System.exit(0);
+                        quit();
                     }
                 }
                 break;
@@ -491,6 +1254,19 @@ public class Stickman_Badminton extends GameEngine {
                     else rightPlayer.setAction(Player.Action.Swing);
                 }
                 break;
+            case Drill:
+                if (k == KeyEvent.VK_D) leftPlayer.setAction(Player.Action.Forward);
+                else if (k == KeyEvent.VK_A) leftPlayer.setAction(Player.Action.Backward);
+                else if (k == KeyEvent.VK_W) leftPlayer.jump();
+                else if (k == KeyEvent.VK_S) leftPlayer.setAction(Player.Action.Swing);
+                // Feed rate doubles or halves, up to a pool-filling stream
+                if (k == KeyEvent.VK_UP) feedRate = Math.min(feedRate * 2, 8192);
+                if (k == KeyEvent.VK_DOWN) feedRate = Math.max(feedRate / 2, 1);
+                if (k == KeyEvent.VK_ESCAPE) {
+                    drill.clear();
+                    gameState = GameState.Menu;
+                }
+                break;
             case Inst:
                 break;
             case PlayOneEnd:
@@ -504,7 +1280,7 @@ public class Stickman_Badminton extends GameEngine {
                         gameState = GameState.Menu;
                         restart = true;
                     }else{
-                        System.exit(0);
+                        quit();
                     }
                 }
                 break;
@@ -518,7 +1294,7 @@ public class Stickman_Badminton extends GameEngine {
                     } else if (endOption== 1) {
                         gameState = GameState.Menu;
                     }else{
-                        System.exit(0);
+                        quit();
                     }
                 }
                 break;
@@ -533,10 +1309,8 @@ public class Stickman_Badminton extends GameEngine {
 
     @Override
     public void keyReleased(KeyEvent e) {
-        int k = e.getKeyCode();
-        if (k == KeyEvent.VK_D || k == KeyEvent.VK_A) leftPlayer.setAction(Player.Action.Standing);
-        if (k == KeyEvent.VK_RIGHT || k == KeyEvent.VK_LEFT) rightPlayer.setAction(Player.Action.Standing);
-        if (k == KeyEvent.VK_ENTER) enterFlag = false;
+        // Walking stops in steer(), from the keys still held
+        if (e.getKeyCode() == KeyEvent.VK_ENTER) enterFlag = false;
     }
 
     public void mousePressed(MouseEvent e) {
@@ -560,10 +1334,15 @@ public class Stickman_Badminton extends GameEngine {
                        gameState = GameState.Inst;
                        instTimer   = 0;
                    }
-                   if (by > 410  && by < 450)
-                   {
+                   if (by > 410  && by < 450){
                        menuOption = 2;
-                       System.exit(0);
+                       gameState = GameState.Inst;
+                       instTimer   = 0;
+                   }
+                   if (by > 450  && by < 490)
+                   {
+                       menuOption = 3;
+                       quit();
                    }
                }
            } else if (gameState == GameState.PlayOneEnd) {
@@ -580,7 +1359,7 @@ public class Stickman_Badminton extends GameEngine {
                    if (by > 310  && by < 360)
                    {
                        endOption = 2;
-                       System.exit(0);
+                       quit();
                    }
                }
            }else if (gameState == GameState.PlayTwoEnd) {
@@ -597,7 +1376,7 @@ public class Stickman_Badminton extends GameEngine {
                    if (by > 310  && by < 360)
                    {
                        endOption = 2;
-                       System.exit(0);
+                       quit();
                    }
                }
            }
@@ -616,10 +1395,13 @@ public class Stickman_Badminton extends GameEngine {
                 if (by > 370  && by < 410){
                     menuOption = 1;
                 }
-                if (by > 410  && by < 450)
-                {
+                if (by > 410  && by < 450){
                     menuOption = 2;
                 }
+                if (by > 450  && by < 490)
+                {
+                    menuOption = 3;
+                }
             }
         }else if (gameState == GameState.PlayOneEnd) {
             if (bx > 270 && bx < 500){
@@ -653,5 +1435,5 @@ public class Stickman_Badminton extends GameEngine {
     // --------------------------------------------------------------------
     // Game State & Scoring
     // --------------------------------------------------------------------
-    enum GameState {Menu, Inst, PlayOne, PlayTwo, PlayOneEnd, PlayTwoEnd}
+    enum GameState {Menu, Inst, PlayOne, PlayTwo, PlayOneEnd, PlayTwoEnd, Drill}
 }
@@ -0,0 +1,132 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Glyphs rasterised once per (font, color) into small images, so text that rarely changes
+ * (scores, menu options, overlay lines) is drawn as image blits instead of a full glyph
+ * layout every frame. A string is laid out with the font's integer advances, which is
+ * where drawString puts the glyphs too (no fractional metrics, no kerning).
+ * Only Latin-1 is cached; other strings fall back to drawString. Once a glyph has been
+ * seen, drawing it allocates nothing.
+ */
+public class TextCache {
+    private static final int CHARS = 256;
+    private static final int PAD = 2;                  // room for antialiasing and overhang
+
+    /** The glyphs of one font in one color */
+    private static final class GlyphSet {
+        final Font font;
+        final int rgb;
+        final Color color;
+        final FontMetrics metrics;
+        final BufferedImage[] glyphs = new BufferedImage[CHARS];
+        long lastUsed;
+
+        GlyphSet(Font font, Color color, FontMetrics metrics) {
+            this.font = font;
+            this.rgb = color.getRGB();
+            this.color = color;
+            this.metrics = metrics;
+        }
+    }
+
+    private final GlyphSet[] sets;
+    private int count = 0;
+    private long clock = 0;
+    private long renders = 0;
+
+    // Scratch graphics for font metrics
+    private final Graphics2D scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE).createGraphics();
+
+    /** A cache holding at most capacity (font, color) pairs */
+    public TextCache(int capacity) {
+        sets = new GlyphSet[capacity];
+        scratch.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    }
+
+    /**
+     * Draws text with its baseline at (x, y) into graphics, rasterising new glyphs first;
+     * text may be a StringBuilder the caller reuses
+     */
+    public void draw(Graphics2D graphics, CharSequence text, Font font, Color color, int x, int y) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= CHARS) {
+                graphics.setFont(font);
+                graphics.drawString(text.toString(), x, y);
+                return;
+            }
+        }
+
+        GlyphSet set = find(font, color);
+        set.lastUsed = ++clock;
+        int pen = x;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                BufferedImage glyph = set.glyphs[c];
+                if (glyph == null) glyph = render(set, c);
+                graphics.drawImage(glyph, pen - PAD, y - set.metrics.getAscent() - PAD, null);
+            }
+            pen += set.metrics.charWidth(c);
+        }
+    }
+
+    /** The box draw() covers drawing text with its baseline at (x, y) */
+    public void bounds(CharSequence text, Font font, int x, int y, Rectangle out) {
+        FontMetrics fm = scratch.getFontMetrics(font);
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) width += fm.charWidth(text.charAt(i));
+        out.setBounds(x - PAD, y - fm.getAscent() - PAD,
+                width + 2 * PAD, fm.getAscent() + fm.getDescent() + 2 * PAD);
+    }
+
+    /** How many glyphs have been rasterised since the cache was made */
+    public long getRenderCount() {
+        return renders;
+    }
+
+    private GlyphSet find(Font font, Color color) {
+        int rgb = color.getRGB();
+        for (int i = 0; i < count; i++) {
+            if (sets[i].rgb == rgb && sets[i].font == font) return sets[i];
+        }
+
+        // Use a free slot, or the one drawn longest ago
+        int slot = count;
+        if (count < sets.length) {
+            count++;
+        } else {
+            slot = 0;
+            for (int i = 1; i < count; i++) {
+                if (sets[i].lastUsed < sets[slot].lastUsed) slot = i;
+            }
+        }
+        scratch.setFont(font);
+        sets[slot] = new GlyphSet(font, color, scratch.getFontMetrics());
+        return sets[slot];
+    }
+
+    private BufferedImage render(GlyphSet set, char c) {
+        FontMetrics fm = set.metrics;
+        int w = fm.charWidth(c) + 2 * PAD;
+        int h = fm.getAscent() + fm.getDescent() + 2 * PAD;
+
+        // Same settings as a frame: antialiased, so the blit looks like drawString did
+        BufferedImage glyph = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = glyph.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setFont(set.font);
+        g.setColor(set.color);
+        g.drawString(String.valueOf(c), PAD, PAD + fm.getAscent());
+        g.dispose();
+
+        set.glyphs[c] = glyph;
+        renders++;
+        return glyph;
+    }
+}
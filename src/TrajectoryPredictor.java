@@ -0,0 +1,153 @@
+/**
+ * Where the shuttle is going. Each flight is simulated ahead once, by a sprite-less copy
+ * of the birdie running the same {@link Birdie#update} (drag, wall bounces, the net zone
+ * and the slide on the ground), and the path is kept while the real shuttle follows it.
+ * A hit, a serve or a change of tick length takes the shuttle off the path and the next
+ * track() predicts again; in between, tracking and every question are lookups.
+ */
+public class TrajectoryPredictor {
+    /** Ticks simulated ahead: ten seconds at 120 Hz, longer than any flight */
+    public static final int HORIZON = 1200;
+
+    private static final double GROUND_Y = 470;
+    private static final double NET_X = 400;
+
+    private final Birdie ghost;
+
+    // Predicted state after each tick; index 0 is the state the prediction started from
+    private final double[] x = new double[HORIZON + 1];
+    private final double[] y = new double[HORIZON + 1];
+    private final double[] vx = new double[HORIZON + 1];
+    private final double[] vy = new double[HORIZON + 1];
+    private int length = 0;              // last predicted index
+    private int at = 0;                  // index the real shuttle is at
+    private int landing = -1;            // first index on the ground, -1 beyond the horizon
+    private boolean flying = false;
+    private double dt = Double.NaN;
+    private long predictions = 0;
+
+    // Where the flight comes down to a player's racket, per side (0 left, 1 right),
+    // worked out once per flight
+    private final long[] crossFlight = {-1, -1};
+    private final double[] crossY = new double[2];
+    private final int[] crossAt = new int[2];
+
+    public TrajectoryPredictor(PhysicsConfig physics) {
+        ghost = new Birdie(physics);
+    }
+
+    /** Follows the real shuttle; call after it has moved (and been hit) each tick */
+    public void track(Birdie birdie, double dt) {
+        if (!birdie.isInPlay()) {
+            flying = false;
+            return;
+        }
+        if (flying && dt == this.dt) {
+            if (matches(birdie, at)) return;
+            if (at < length && matches(birdie, at + 1)) {
+                at++;
+                return;
+            }
+        }
+        predict(birdie, dt);
+    }
+
+    private boolean matches(Birdie b, int i) {
+        return b.x == x[i] && b.y == y[i] && b.vx == vx[i] && b.vy == vy[i];
+    }
+
+    private void predict(Birdie birdie, double dt) {
+        ghost.copyStateFrom(birdie);
+        this.dt = dt;
+        at = 0;
+        landing = -1;
+        int n = 0;
+        store(0);
+        while (n < HORIZON && ghost.isInPlay()) {
+            ghost.update(dt);
+            store(++n);
+        }
+        length = n;
+        flying = true;
+        predictions++;
+    }
+
+    private void store(int i) {
+        x[i] = ghost.x;
+        y[i] = ghost.y;
+        vx[i] = ghost.vx;
+        vy[i] = ghost.vy;
+        if (landing < 0 && ghost.y >= GROUND_Y) landing = i;
+    }
+
+    /** True while a shuttle is in play and predicted */
+    public boolean hasFlight() {
+        return flying;
+    }
+
+    /** Number of flights predicted so far; once per serve or hit when ticks are fixed */
+    public long getPredictions() {
+        return predictions;
+    }
+
+    /** Ticks until the shuttle touches the ground, or -1 if not within the horizon */
+    public int ticksToLanding() {
+        return landing < 0 ? -1 : Math.max(0, landing - at);
+    }
+
+    /** Where the shuttle touches the ground (or is at the horizon) */
+    public double getLandingX() {
+        return x[landing < 0 ? length : landing];
+    }
+
+    /** Points of the path still ahead of the shuttle, including where it is now */
+    public int remaining() {
+        return flying ? length - at + 1 : 0;
+    }
+
+    /** Predicted position ahead ticks from now, 0 <= ahead < remaining() */
+    public double pathX(int ahead) {
+        return x[at + ahead];
+    }
+
+    public double pathY(int ahead) {
+        return y[at + ahead];
+    }
+
+    /** Predicted vertical velocity ahead ticks from now */
+    public double pathVY(int ahead) {
+        return vy[at + ahead];
+    }
+
+    /**
+     * Ticks until the shuttle comes down to height hitY on the half of the player serving in
+     * direction dir, or -1 if it will not before it lands or has already passed it
+     */
+    public int ticksToReach(int dir, double hitY) {
+        int i = crossing(dir, hitY);
+        return i < at ? -1 : i - at;
+    }
+
+    /** Where the shuttle comes down to hitY for that player; only meaningful when ticksToReach() >= 0 */
+    public double reachX(int dir, double hitY) {
+        int i = crossing(dir, hitY);
+        return i < 0 ? getLandingX() : x[i];
+    }
+
+    /** Finds the crossing on one side, once per flight and height */
+    private int crossing(int dir, double hitY) {
+        int side = dir > 0 ? 0 : 1;
+        if (crossFlight[side] == predictions && crossY[side] == hitY) return crossAt[side];
+
+        int found = -1;
+        int last = landing < 0 ? length : landing;
+        for (int i = at; i <= last && found < 0; i++) {
+            boolean onSide = dir > 0 ? x[i] < NET_X : x[i] > NET_X;
+            if (onSide && y[i] >= hitY && vy[i] >= 0) found = i;
+        }
+        crossFlight[side] = predictions;
+        crossY[side] = hitY;
+        crossAt[side] = found;
+        return found;
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the newest of a stream of values from one writer thread to one reader thread,
+ * without locks and without allocating. There are three preallocated slots: the writer
+ * fills {@link #back()} and publishes it, which swaps it with the middle slot; the reader's
+ * {@link #acquire()} swaps the middle slot with its front slot if something new is there.
+ * Neither side ever waits for the other. A slow reader skips values; a slow writer leaves
+ * the reader on the last complete one.
+ */
+public class TripleBuffer<T> {
+    private static final int FRESH = 4;            // set on the middle index when it is unread
+
+    private final Object[] slots;
+    private final long[] stamps = new long[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;                           // writer only
+    private int front = 2;                          // reader only
+
+    public TripleBuffer(T a, T b, T c) {
+        slots = new Object[] {a, b, c};
+    }
+
+    /** The slot to fill before the next publish(); writer only */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) slots[back];
+    }
+
+    /** Hands the back slot to the reader, stamped (e.g. with the time it was made); writer only */
+    public void publish(long stamp) {
+        stamps[back] = stamp;
+        back = middle.getAndSet(back | FRESH) & 3;
+    }
+
+    /** Moves the newest published value to the front; returns false if there was none. Reader only */
+    public boolean acquire() {
+        if ((middle.get() & FRESH) == 0) return false;
+        front = middle.getAndSet(front) & 3;
+        return true;
+    }
+
+    /** The value the reader holds, as of the last acquire(); reader only */
+    @SuppressWarnings("unchecked")
+    public T front() {
+        return (T) slots[front];
+    }
+
+    /** The stamp published with front() */
+    public long frontStamp() {
+        return stamps[front];
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * N {@link BadmintonEnv}s stepped in lockstep, for training policies offline. One step()
+ * takes an action per environment and fills flat arrays: observations (N x
+ * {@link BadmintonEnv#OBSERVATION_SIZE} floats, environment after environment), rewards
+ * and done flags. An environment whose match ends is reset at once, so its observation is
+ * already the first of the next match, as in the usual vectorised environments.
+ *
+ * The environments are split into contiguous slices, one per thread: the calling thread
+ * steps the first and daemon workers, parked between steps, the others. The caller then
+ * parks until the last worker to finish wakes it. There are never more threads than cores,
+ * since a step waits for its slowest slice. Environment i is
+ * seeded from the i-th number of a generator seeded with the given seed, so a run depends
+ * only on the seed and the actions, not on the number of threads. A step does not allocate
+ * except when a match ends. close() stops the workers; until then they hold the environments.
+ *
+ * <pre>
+ * java VectorEnv [--envs N] [--threads T] [--steps S] [--seed S]
+ * </pre>
+ * runs random actions and reports the steps per second and per minute.
+ */
+public class VectorEnv implements AutoCloseable {
+    private final BadmintonEnv[] envs;
+    private final float[] observations;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private int[] actions;
+
+    // Lockstep: each round is one step of every slice
+    private final int threads;
+    private final Thread[] workers;
+    private final AtomicInteger pending = new AtomicInteger();   // workers still on this round
+    private volatile Thread caller;                              // the thread in step()
+    private volatile int round = 0;
+    private volatile boolean closed = false;
+
+    // Matches finished, and steps taken, by all environments
+    private long episodes = 0;
+    private long steps = 0;
+
+    public VectorEnv(int n, long seed, PhysicsConfig physics, int threads) {
+        this.threads = Math.max(1, Math.min(Math.min(threads, n), Runtime.getRuntime().availableProcessors()));
+        envs = new BadmintonEnv[n];
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (int i = 0; i < n; i++) envs[i] = new BadmintonEnv(physics, seeds.nextLong());
+        observations = new float[n * BadmintonEnv.OBSERVATION_SIZE];
+        rewards = new float[n];
+        dones = new boolean[n];
+        for (int i = 0; i < n; i++) envs[i].observe(observations, i * BadmintonEnv.OBSERVATION_SIZE);
+
+        workers = new Thread[this.threads - 1];
+        for (int t = 1; t < this.threads; t++) {
+            final int slice = t;
+            workers[t - 1] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int seen = 0;
+                    while (true) {
+                        while (round == seen && !closed) LockSupport.park(this);
+                        if (closed) return;
+                        seen = round;
+                        stepSlice(slice);
+                        if (pending.decrementAndGet() == 0) LockSupport.unpark(caller);
+                    }
+                }
+            }, "VectorEnv-" + t);
+            workers[t - 1].setDaemon(true);
+            workers[t - 1].start();
+        }
+    }
+
+    /** Number of environments */
+    public int size() {
+        return envs.length;
+    }
+
+    /** Environment i, e.g. for its score */
+    public BadmintonEnv get(int i) {
+        return envs[i];
+    }
+
+    /**
+     * Steps every environment, environment i doing actions[i]; the results are in
+     * getObservations(), getRewards() and getDones() until the next step
+     */
+    public void step(int[] actions) {
+        if (closed) throw new IllegalStateException("step() after close()");
+        if (actions.length != envs.length) {
+            throw new IllegalArgumentException(actions.length + " actions for " + envs.length + " environments");
+        }
+        this.actions = actions;
+        caller = Thread.currentThread();
+        pending.set(workers.length);
+        round++;
+        for (Thread w : workers) LockSupport.unpark(w);
+        stepSlice(0);
+        while (pending.get() > 0) LockSupport.park(this);
+
+        steps += envs.length;
+        for (boolean done : dones) {
+            if (done) episodes++;
+        }
+    }
+
+    /** Resets every environment, reseeding them as the constructor did */
+    public void reset(long seed) {
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (int i = 0; i < envs.length; i++) {
+            envs[i].reset(seeds.nextLong());
+            envs[i].observe(observations, i * BadmintonEnv.OBSERVATION_SIZE);
+            rewards[i] = 0;
+            dones[i] = false;
+        }
+    }
+
+    /** Stops the worker threads and waits for them; the environments can then be collected */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (Thread w : workers) LockSupport.unpark(w);
+        try {
+            for (Thread w : workers) w.join();
+        } catch (InterruptedException e) {
+            // They still stop on their own; keep the interrupt for the caller
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stepSlice(int slice) {
+        int from = (int) ((long) envs.length * slice / threads);
+        int to = (int) ((long) envs.length * (slice + 1) / threads);
+        for (int i = from; i < to; i++) {
+            BadmintonEnv env = envs[i];
+            rewards[i] = env.step(actions[i]);
+            dones[i] = env.isDone();
+            if (dones[i]) env.reset();
+            env.observe(observations, i * BadmintonEnv.OBSERVATION_SIZE);
+        }
+    }
+
+    /** Observations after the last step, OBSERVATION_SIZE floats per environment; do not modify */
+    public float[] getObservations() {
+        return observations;
+    }
+
+    /** Rewards of the last step */
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    /** Environments whose match ended on the last step (and which have been reset) */
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    public long getEpisodes() {
+        return episodes;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public static void main(String[] args) {
+        int n = 256;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long total = 10000000;
+        long seed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--envs":    n       = Integer.parseInt(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--steps":   total   = Long.parseLong(args[i + 1]);   break;
+                case "--seed":    seed    = Long.parseLong(args[i + 1]);   break;
+                default:
+                    System.out.println("Error: unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        try (VectorEnv vec = new VectorEnv(n, seed, new PhysicsConfig(), threads)) {
+            int[] actions = new int[n];
+            SplittableRandom policy = new SplittableRandom(seed);
+            double reward = 0;
+            long start = System.nanoTime();
+            while (vec.getSteps() < total) {
+                for (int i = 0; i < n; i++) actions[i] = policy.nextInt(BadmintonEnv.ACTIONS);
+                vec.step(actions);
+                for (float r : vec.getRewards()) reward += r;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.ROOT, "%d envs on %d threads: %d steps, %d matches, reward %.0f in %.2f s "
+                            + "(%.2f M steps/s, %.0f M steps/min)%n",
+                    n, vec.threads, vec.getSteps(), vec.getEpisodes(), reward, seconds,
+                    vec.getSteps() / seconds / 1e6, vec.getSteps() / seconds * 60 / 1e6);
+        }
+    }
+}